@@ -0,0 +1,81 @@
+package com.laioffer.staybooking.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*Dedicated thread pools, one per kind of work, so that a slow dependency can only exhaust its own pool and never the
+request threads of Tomcat or the common ForkJoinPool.*/
+@Configuration
+public class ExecutorConfig {
+
+    // chunks of the MySQL availability check, see ReservedStayLookup. Each thread holds one JDBC connection while it runs,
+    // so keep this well below spring.datasource.hikari.maximum-pool-size
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService availabilityLookupExecutor(@Value("${availability.lookup.threads:4}") int threads) {
+        return Executors.newFixedThreadPool(threads, namedThreads("availability-lookup-"));
+    }
+
+    // the outbox dispatcher, see OutboxService. A single thread keeps the events of a batch in order
+    @Bean(destroyMethod = "shutdown")
+    public ScheduledExecutorService outboxDispatchExecutor() {
+        return Executors.newSingleThreadScheduledExecutor(namedThreads("outbox-dispatch-"));
+    }
+
+    // the nightly move of past reserved nights, see ReservedDateArchiver
+    @Bean(destroyMethod = "shutdown")
+    public ScheduledExecutorService archiveExecutor() {
+        return Executors.newSingleThreadScheduledExecutor(namedThreads("reserved-date-archiver-"));
+    }
+
+    // geocoding of newly created stays, see StayGeocodingService: one thread hands out the pending stays,
+    // stay.geocode.concurrency threads wait on Google
+    @Bean(destroyMethod = "shutdown")
+    public ScheduledExecutorService geocodeExecutor() {
+        return Executors.newSingleThreadScheduledExecutor(namedThreads("stay-geocoder-"));
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService geocodeLookupExecutor(@Value("${stay.geocode.concurrency:8}") int threads) {
+        return Executors.newFixedThreadPool(threads, namedThreads("stay-geocode-lookup-"));
+    }
+
+    // stay image uploads to GCS, see ImageStorageService. Uploads only wait on the network, so there can be far more threads than
+    // cores. When every thread is busy and the queue is full, new uploads are rejected instead of queueing without bound
+    @Bean(destroyMethod = "shutdown")
+    public ThreadPoolExecutor imageUploadExecutor(@Value("${image.upload.threads:16}") int threads,
+                                                  @Value("${image.upload.queue-capacity:64}") int queueCapacity) {
+        return new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueCapacity),
+                namedThreads("image-upload-"), new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    // a full rebuild of the location index, see LocationReindexService: one thread reads the stays page by page,
+    // reindex.threads threads write the pages to Elasticsearch
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService reindexExecutor() {
+        return Executors.newSingleThreadExecutor(namedThreads("location-reindex-"));
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService reindexWriterExecutor(@Value("${reindex.threads:4}") int threads) {
+        return Executors.newFixedThreadPool(threads, namedThreads("location-reindex-writer-"));
+    }
+
+    static ThreadFactory namedThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,44 @@
+package com.laioffer.staybooking.config;
+
+import com.laioffer.staybooking.model.Location;
+import com.laioffer.staybooking.repository.CustomLocationRepository;
+import com.laioffer.staybooking.repository.EmbeddedLocationRepository;
+import com.laioffer.staybooking.repository.LocationRepository;
+import com.laioffer.staybooking.repository.StayRepository;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.data.elasticsearch.core.geo.GeoPoint;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/*Chooses which CustomLocationRepository the services search and index through, with the location.repository property:
+- elasticsearch (default): the Spring Data LocationRepository backed by the "loc" index.
+- embedded: an EmbeddedLocationRepository held in this JVM and rebuilt from the stay table at startup. To run without
+  an Elasticsearch cluster also set spring.data.elasticsearch.repositories.enabled=false.
+The bean is @Primary because the Spring Data repository (and its CustomLocationRepositoryImpl fragment) are
+CustomLocationRepository beans too.*/
+@Configuration
+public class LocationRepositoryConfig {
+
+    @Bean
+    @Primary
+    @ConditionalOnProperty(name = "location.repository", havingValue = "elasticsearch", matchIfMissing = true)
+    public CustomLocationRepository elasticsearchLocationRepository(LocationRepository locationRepository) {
+        return locationRepository;
+    }
+
+    @Bean
+    @Primary
+    @ConditionalOnProperty(name = "location.repository", havingValue = "embedded")
+    public CustomLocationRepository embeddedLocationRepository(StayRepository stayRepository) {
+        EmbeddedLocationRepository repository = new EmbeddedLocationRepository();
+        List<Location> locations = stayRepository.findAllCoordinates().stream()
+                .map(row -> new Location((Long) row[0], new GeoPoint((Double) row[1], (Double) row[2])).setGuestNumber((Integer) row[3]))
+                .collect(Collectors.toList());
+        repository.rebuild(locations);
+        return repository;
+    }
+}
@@ -0,0 +1,38 @@
+package com.laioffer.staybooking.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.sql.ResultSet;
+
+/*reservation.id used to take its values from the hibernate_sequence table and is now an IDENTITY column (see Reservation).
+spring.jpa.hibernate.ddl-auto=update creates new tables that way but never alters an existing column, so this adds AUTO_INCREMENT
+to a reservation table created before the change. MySQL starts the counter after the largest existing id.*/
+@Component
+public class ReservationIdMigration {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReservationIdMigration.class);
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public ReservationIdMigration(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @PostConstruct
+    public void migrate() {
+        Boolean autoIncrement = jdbcTemplate.execute((ConnectionCallback<Boolean>) connection -> {
+            try (ResultSet columns = connection.getMetaData().getColumns(connection.getCatalog(), null, "reservation", "id")) {
+                return columns.next() ? "YES".equals(columns.getString("IS_AUTOINCREMENT")) : null;
+            }
+        });
+        if (Boolean.FALSE.equals(autoIncrement)) {
+            logger.info("Making reservation.id AUTO_INCREMENT");
+            jdbcTemplate.execute("ALTER TABLE reservation MODIFY id BIGINT NOT NULL AUTO_INCREMENT");
+        }
+    }
+}
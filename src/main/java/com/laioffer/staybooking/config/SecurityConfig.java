@@ -47,8 +47,11 @@ public class SecurityConfig extends WebSecurityConfigurerAdapter {
                 .antMatchers("/stays").hasAuthority("ROLE_HOST")           //为了拜访stay，一定要Role as Host
                 .antMatchers("/stays/*").hasAuthority("ROLE_HOST")
                 .antMatchers("/search").hasAuthority("ROLE_GUEST")
+                .antMatchers("/search/flexible").hasAuthority("ROLE_GUEST")
                 .antMatchers("/reservations").hasAuthority("ROLE_GUEST")
                 .antMatchers("/reservations/*").hasAuthority("ROLE_GUEST")
+                .antMatchers("/reservations/holds/**").hasAuthority("ROLE_GUEST")
+                .antMatchers("/admin/**").hasAuthority("ROLE_ADMIN")
                 .anyRequest().authenticated()
                 .and()
                 .csrf()
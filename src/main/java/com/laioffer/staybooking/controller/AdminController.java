@@ -0,0 +1,33 @@
+package com.laioffer.staybooking.controller;
+
+import com.laioffer.staybooking.model.ReindexProgress;
+import com.laioffer.staybooking.service.LocationReindexService;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestController;
+
+// operations for ROLE_ADMIN users, see SecurityConfig
+@RestController
+public class AdminController {
+
+    private final LocationReindexService locationReindexService;
+
+    public AdminController(LocationReindexService locationReindexService) {
+        this.locationReindexService = locationReindexService;
+    }
+
+    // starts rebuilding the location index from MySQL in the background (409 if one is running), see LocationReindexService
+    @PostMapping("/admin/reindex")
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    public ReindexProgress startReindex() {
+        return locationReindexService.start();
+    }
+
+    // progress, rate and ETA of the running or last reindex
+    @GetMapping("/admin/reindex")
+    public ReindexProgress getReindexProgress() {
+        return locationReindexService.progress();
+    }
+}
@@ -29,4 +29,9 @@ public class AuthenticationController {
         return authenticationService.authenticate(user, UserRole.ROLE_HOST);
     }
 
+    @PostMapping("/authenticate/admin")
+    public Token authenticateAdmin(@RequestBody User user) {
+        return authenticationService.authenticate(user, UserRole.ROLE_ADMIN);
+    }
+
 }
\ No newline at end of file
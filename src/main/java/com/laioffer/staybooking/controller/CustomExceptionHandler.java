@@ -31,11 +31,26 @@ public class CustomExceptionHandler {
         return new ResponseEntity<>(ex.getMessage(), HttpStatus.INTERNAL_SERVER_ERROR);
     }
 
+    @ExceptionHandler(ImageUploadBusyException.class)   // 上传线程池满了，客户端过一会儿再试
+    public final ResponseEntity<String> handleImageUploadBusyExceptions(Exception ex) {
+        return new ResponseEntity<>(ex.getMessage(), HttpStatus.SERVICE_UNAVAILABLE);
+    }
+
     @ExceptionHandler(InvalidSearchDateException.class)
     public final ResponseEntity<String> handleInvalidSearchDateExceptions(Exception ex) {
         return new ResponseEntity<>(ex.getMessage(), HttpStatus.BAD_REQUEST);
     }
 
+    @ExceptionHandler(InvalidSearchCursorException.class)
+    public final ResponseEntity<String> handleInvalidSearchCursorExceptions(Exception ex) {
+        return new ResponseEntity<>(ex.getMessage(), HttpStatus.BAD_REQUEST);
+    }
+
+    @ExceptionHandler(InvalidSearchDistanceException.class)
+    public final ResponseEntity<String> handleInvalidSearchDistanceExceptions(Exception ex) {
+        return new ResponseEntity<>(ex.getMessage(), HttpStatus.BAD_REQUEST);
+    }
+
     @ExceptionHandler(GeoCodingException.class)
     public final ResponseEntity<String> handleGeoCodingExceptions(Exception ex) {
         return new ResponseEntity<>(ex.getMessage(), HttpStatus.INTERNAL_SERVER_ERROR);
@@ -52,6 +67,11 @@ public class CustomExceptionHandler {
     }
 
 
+    @ExceptionHandler(HoldLimitExceededException.class)    // 一个guest同时hold的太多了
+    public final ResponseEntity<String> handleHoldLimitExceededExceptions(Exception ex) {
+        return new ResponseEntity<>(ex.getMessage(), HttpStatus.TOO_MANY_REQUESTS);
+    }
+
     @ExceptionHandler(InvalidReservationDateException.class)
     public final ResponseEntity<String> handleInvalidReservationDateExceptions(Exception ex) {
         return new ResponseEntity<>(ex.getMessage(), HttpStatus.BAD_REQUEST);
@@ -64,6 +84,11 @@ public class CustomExceptionHandler {
     }
 
 
+    @ExceptionHandler(ReindexInProgressException.class)
+    public final ResponseEntity<String> handleReindexInProgressExceptions(Exception ex) {
+        return new ResponseEntity<>(ex.getMessage(), HttpStatus.CONFLICT);
+    }
+
     @ExceptionHandler(StayDeleteException.class)
     public final ResponseEntity<String> handleStayDeleteExceptions(Exception ex) {
         return new ResponseEntity<>(ex.getMessage(), HttpStatus.CONFLICT);
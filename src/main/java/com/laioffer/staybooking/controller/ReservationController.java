@@ -3,7 +3,11 @@ package com.laioffer.staybooking.controller;
 
 import com.laioffer.staybooking.exception.InvalidReservationDateException;
 import com.laioffer.staybooking.model.Reservation;
+import com.laioffer.staybooking.model.ReservationHold;
+import com.laioffer.staybooking.model.ReservationPage;
+import com.laioffer.staybooking.model.ReservationStatus;
 import com.laioffer.staybooking.model.User;
+import com.laioffer.staybooking.service.ReservationHoldService;
 import com.laioffer.staybooking.service.ReservationService;
 import org.springframework.web.bind.annotation.*;
 
@@ -16,16 +20,23 @@ import java.util.List;
 @RestController
 public class ReservationController {
     private final ReservationService reservationService;
+    private final ReservationHoldService reservationHoldService;
 
 
-    public ReservationController(ReservationService reservationService) {
+    public ReservationController(ReservationService reservationService, ReservationHoldService reservationHoldService) {
         this.reservationService = reservationService;
+        this.reservationHoldService = reservationHoldService;
     }
 
 
     @GetMapping(value = "/reservations")
-    public List<Reservation> listReservations(Principal principal) {
-        return reservationService.listByGuest(principal.getName());
+    public ReservationPage listReservations(
+            @RequestParam(name = "status", defaultValue = "ALL") ReservationStatus status,        // UPCOMING, PAST or ALL
+            @RequestParam(name = "page_size", required = false) Integer pageSize,
+            @RequestParam(name = "cursor", required = false) String cursor,        // next_cursor of the previous page
+            Principal principal) {
+        return reservationService.listByGuest(principal.getName(), status,
+                ReservationPage.pageSize(pageSize), cursor);
     }
 
 
@@ -41,6 +52,30 @@ public class ReservationController {
     }
 
 
+    // holds the dates for reservation.hold.ttl-seconds while the guest pays; same body as POST /reservations
+    @PostMapping("/reservations/holds")
+    public ReservationHold holdReservation(@RequestBody Reservation reservation, Principal principal) {
+        LocalDate checkinDate = reservation.getCheckinDate();
+        LocalDate checkoutDate = reservation.getCheckoutDate();
+        if (checkinDate.equals(checkoutDate) || checkinDate.isAfter(checkoutDate) || checkinDate.isBefore(LocalDate.now())) {
+            throw new InvalidReservationDateException("Invalid date for reservation");
+        }
+        return reservationHoldService.hold(reservation.getStay().getId(), checkinDate, checkoutDate, principal.getName());
+    }
+
+
+    @PostMapping("/reservations/holds/{holdId}/confirm")
+    public void confirmHold(@PathVariable String holdId, Principal principal) {
+        reservationHoldService.confirm(holdId, principal.getName());
+    }
+
+
+    @DeleteMapping("/reservations/holds/{holdId}")
+    public void releaseHold(@PathVariable String holdId, Principal principal) {
+        reservationHoldService.release(holdId, principal.getName());
+    }
+
+
     @DeleteMapping("/reservations/{reservationId}")
     public void deleteReservation(@PathVariable Long reservationId, Principal principal) {
         reservationService.delete(reservationId, principal.getName());
@@ -2,7 +2,9 @@ package com.laioffer.staybooking.controller;
 
 
 import com.laioffer.staybooking.exception.InvalidSearchDateException;
-import com.laioffer.staybooking.model.Stay;
+import com.laioffer.staybooking.model.FlexibleStayMatch;
+import com.laioffer.staybooking.model.SearchPage;
+import com.laioffer.staybooking.model.StaySummary;
 import com.laioffer.staybooking.service.SearchService;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestParam;
@@ -11,7 +13,6 @@ import org.springframework.web.bind.annotation.RestController;
 
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
-import java.util.List;
 
 /*This code defines a Spring MVC controller named SearchController responsible for handling search requests related to stays.
 The controller processes input parameters for guest number, check-in and check-out dates, geographical coordinates (latitude and longitude),
@@ -19,6 +20,9 @@ and an optional distance parameter. It communicates with the SearchService to pe
 @RestController
 public class SearchController {
 
+    private static final int DEFAULT_PAGE_SIZE = 20;
+    private static final int MAX_PAGE_SIZE = 100;
+    private static final int MAX_FLEXIBLE_WINDOW_DAYS = 366;
 
     private final SearchService searchService;
 
@@ -29,13 +33,15 @@ public class SearchController {
 
 
     @GetMapping(value = "/search")
-    public List<Stay> searchStays(
+    public SearchPage<StaySummary> searchStays(
             @RequestParam(name = "guest_number") int guestNumber,
             @RequestParam(name = "checkin_date") String start,  // Spring 4.0之后可以直接用LocalDate class去记录时间不需要额外的parse
             @RequestParam(name = "checkout_date") String end,
             @RequestParam(name = "lat") double lat,
             @RequestParam(name = "lon") double lon,
-            @RequestParam(name = "distance", required = false) String distance) {
+            @RequestParam(name = "distance", required = false) String distance,
+            @RequestParam(name = "page_size", required = false) Integer pageSize,
+            @RequestParam(name = "cursor", required = false) String cursor) {   // next_cursor of the previous page
         LocalDate checkinDate = LocalDate.parse(start, DateTimeFormatter.ofPattern("yyyy-MM-dd"));
         LocalDate checkoutDate = LocalDate.parse(end, DateTimeFormatter.ofPattern("yyyy-MM-dd"));
 
@@ -43,6 +49,31 @@ public class SearchController {
         if (checkinDate.equals(checkoutDate) || checkinDate.isAfter(checkoutDate) || checkinDate.isBefore(LocalDate.now())) {
             throw new InvalidSearchDateException("Invalid date for search");
         }
-        return searchService.search(guestNumber, checkinDate, checkoutDate, lat, lon, distance);
+        int size = pageSize == null ? DEFAULT_PAGE_SIZE : Math.max(1, Math.min(pageSize, MAX_PAGE_SIZE));
+        return searchService.search(guestNumber, checkinDate, checkoutDate, lat, lon, distance, size, cursor);
+    }
+
+    // "any `nights` consecutive nights between window_start and window_end": each stay comes with its earliest free run,
+    // checkin_date >= window_start and checkout_date <= window_end
+    @GetMapping(value = "/search/flexible")
+    public SearchPage<FlexibleStayMatch> searchFlexible(
+            @RequestParam(name = "guest_number") int guestNumber,
+            @RequestParam(name = "window_start") String start,
+            @RequestParam(name = "window_end") String end,
+            @RequestParam(name = "nights") int nights,
+            @RequestParam(name = "lat") double lat,
+            @RequestParam(name = "lon") double lon,
+            @RequestParam(name = "distance", required = false) String distance,
+            @RequestParam(name = "page_size", required = false) Integer pageSize,
+            @RequestParam(name = "cursor", required = false) String cursor) {
+        LocalDate windowStart = LocalDate.parse(start, DateTimeFormatter.ofPattern("yyyy-MM-dd"));
+        LocalDate windowEnd = LocalDate.parse(end, DateTimeFormatter.ofPattern("yyyy-MM-dd"));
+
+        if (nights < 1 || windowStart.isBefore(LocalDate.now()) || windowStart.plusDays(nights).isAfter(windowEnd)
+                || windowEnd.isAfter(windowStart.plusDays(MAX_FLEXIBLE_WINDOW_DAYS))) {
+            throw new InvalidSearchDateException("Invalid date window for flexible search");
+        }
+        int size = pageSize == null ? DEFAULT_PAGE_SIZE : Math.max(1, Math.min(pageSize, MAX_PAGE_SIZE));
+        return searchService.searchFlexible(guestNumber, windowStart, windowEnd, nights, lat, lon, distance, size, cursor);
     }
 }
\ No newline at end of file
@@ -1,14 +1,42 @@
 package com.laioffer.staybooking.controller;
 
-import com.laioffer.staybooking.model.Reservation;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.laioffer.staybooking.exception.InvalidSearchDateException;
+import com.laioffer.staybooking.model.AvailabilityCalendar;
+import com.laioffer.staybooking.model.MonthlyOccupancy;
+import com.laioffer.staybooking.model.ReservationPage;
+import com.laioffer.staybooking.model.ReservationStatus;
 import com.laioffer.staybooking.model.Stay;
+import com.laioffer.staybooking.model.StayImportSummary;
+import com.laioffer.staybooking.model.StayIndexState;
+import com.laioffer.staybooking.model.StaySummary;
 import com.laioffer.staybooking.model.User;
+import com.laioffer.staybooking.service.AvailabilityCalendarService;
+import com.laioffer.staybooking.service.OccupancyService;
 import com.laioffer.staybooking.service.ReservationService;
+import com.laioffer.staybooking.service.StayImportService;
 import com.laioffer.staybooking.service.StayService;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.multipart.MultipartFile;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.security.Principal;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.List;
 
 /*
@@ -21,17 +49,31 @@ data and actions. - 不能更改,只能add，read，remove*/
 @RestController        // This means its a Spring MVC controller responsible for handling HTTP requests and generating responses.
 public class StayController {
 
+    private static final int DEFAULT_CALENDAR_DAYS = 365;
+    private static final int MAX_CALENDAR_DAYS = 731;
+    private static final int DEFAULT_OCCUPANCY_MONTHS = 12;
+    private static final int MAX_OCCUPANCY_MONTHS = 36;
+
     private final StayService stayService;
     private final ReservationService reservationService;
+    private final AvailabilityCalendarService availabilityCalendarService;
+    private final OccupancyService occupancyService;
+    private final StayImportService stayImportService;
+    private final ObjectMapper objectMapper;
 
-    public StayController(StayService stayService, ReservationService reservationService) {
+    public StayController(StayService stayService, ReservationService reservationService, AvailabilityCalendarService availabilityCalendarService, OccupancyService occupancyService,
+                          StayImportService stayImportService, ObjectMapper objectMapper) {
 
         this.stayService = stayService;
         this.reservationService = reservationService;
+        this.availabilityCalendarService = availabilityCalendarService;
+        this.occupancyService = occupancyService;
+        this.stayImportService = stayImportService;
+        this.objectMapper = objectMapper;
     }
 
     @GetMapping(value = "/stays")
-    public List<Stay> listStays(Principal principal) {     // Principal object represents an authenticated user
+    public List<StaySummary> listStays(Principal principal) {     // Principal object represents an authenticated user
         return stayService.listByUser(principal.getName());
     }
 
@@ -40,9 +82,60 @@ public class StayController {
         return stayService.findByIdAndHost(stayId, principal.getName());
     }
 
+    /*Booked nights of a stay as run-length encoded AvailabilityCalendar, for any authenticated user (guests render it before booking).
+    Defaults to the next 365 nights. Send the ETag back in If-None-Match to get a 304 while nothing changed.*/
+    @GetMapping(value = "/stays/{stayId}/availability")
+    public ResponseEntity<AvailabilityCalendar> getAvailability(
+            @PathVariable Long stayId,
+            @RequestParam(name = "from", required = false) String from,
+            @RequestParam(name = "to", required = false) String to,
+            WebRequest request) {
+        LocalDate fromDate = from == null ? LocalDate.now() : LocalDate.parse(from, DateTimeFormatter.ofPattern("yyyy-MM-dd"));
+        LocalDate toDate = to == null ? fromDate.plusDays(DEFAULT_CALENDAR_DAYS) : LocalDate.parse(to, DateTimeFormatter.ofPattern("yyyy-MM-dd"));
+        if (!fromDate.isBefore(toDate) || toDate.isAfter(fromDate.plusDays(MAX_CALENDAR_DAYS))) {
+            throw new InvalidSearchDateException("Invalid date range for availability");
+        }
+        String etag = availabilityCalendarService.etag(stayId, fromDate, toDate);
+        if (request.checkNotModified(etag)) {
+            return null;          // Spring has already turned the response into a 304
+        }
+        return ResponseEntity.ok()
+                .eTag(etag)
+                .cacheControl(CacheControl.noCache())      // may be stored, but must be revalidated with the ETag
+                .body(availabilityCalendarService.calendar(stayId, fromDate, toDate));
+    }
+
+    /*Booked nights and occupancy rate of each of the host's stays per month, from the stay_occupancy tallies (see OccupancyService).
+    from and to are months like 2024-05, both inclusive; defaults to the last 12 months up to the current one.*/
+    @GetMapping(value = "/stays/occupancy")
+    public List<MonthlyOccupancy> getOccupancy(
+            @RequestParam(name = "from", required = false) String from,
+            @RequestParam(name = "to", required = false) String to,
+            Principal principal) {
+        YearMonth toMonth = to == null ? YearMonth.now() : parseMonth(to);
+        YearMonth fromMonth = from == null ? toMonth.minusMonths(DEFAULT_OCCUPANCY_MONTHS - 1) : parseMonth(from);
+        if (fromMonth.isAfter(toMonth)) {
+            throw new InvalidSearchDateException("from must not be after to");
+        }
+        if (fromMonth.plusMonths(MAX_OCCUPANCY_MONTHS).isBefore(toMonth.plusMonths(1))) {
+            throw new InvalidSearchDateException("Invalid month range for occupancy");
+        }
+        return occupancyService.occupancy(principal.getName(), fromMonth, toMonth);
+    }
+
+    // yyyy-MM, a malformed month is a 400 rather than the 500 of an uncaught DateTimeParseException
+    private static YearMonth parseMonth(String month) {
+        try {
+            return YearMonth.parse(month);
+        } catch (DateTimeParseException e) {
+            throw new InvalidSearchDateException("Invalid month: " + month);
+        }
+    }
+
     // This API allows authenticated users to add new stays to the system
+    // returns right away with the stay PENDING; poll GET /stays/{stayId}/index-status until it is INDEXED (or FAILED)
     @PostMapping("/stays")
-    public void addStay(
+    public StayIndexState addStay(
             @RequestParam("name") String name,   // @RequestParam annotations to extract input parameters from the request, such as name, address, description, guest number, images, and the authenticated user's principal.
             @RequestParam("address") String address,
             @RequestParam("description") String description,
@@ -57,7 +150,42 @@ public class StayController {
                 .setGuestNumber(guestNumber)
                 .setHost(new User.Builder().setUsername(principal.getName()).build())   // The authenticated user is considered the host of the stay. A new User object is created using the builder pattern, setting the username as the principal's name. This ensures that the stay is associated with the user who is creating it.
                 .build();
-        stayService.add(stay, images);    //  This method is responsible for adding the stay to the system and associating the images with it.
+        return stayService.add(stay, images);    //  This method is responsible for adding the stay to the system and associating the images with it.
+    }
+
+    /*Bulk import of stays without images, see StayImportService: CSV with a header row (Content-Type: text/csv) or one JSON
+    object per line (application/x-ndjson), with name, address, description and guest_number. The body is read as it arrives,
+    and the response streams one JSON line per record ({"line":2,"stay_id":42} or {"line":3,"error":"..."}) followed by
+    a summary line. Imported stays are PENDING until geocoded and indexed, like stays added one by one.*/
+    @PostMapping(value = "/stays/import", consumes = {"text/csv", "application/x-ndjson"})
+    public void importStays(HttpServletRequest request, HttpServletResponse response, Principal principal) throws IOException {
+        Charset charset = request.getCharacterEncoding() == null ? StandardCharsets.UTF_8 : Charset.forName(request.getCharacterEncoding());
+        Reader body = new InputStreamReader(request.getInputStream(), charset);
+        response.setContentType("application/x-ndjson");
+        response.setCharacterEncoding("UTF-8");
+        PrintWriter out = response.getWriter();     // buffered by the container, which sends it in chunks as it fills
+        StayImportSummary summary;
+        if (MediaType.parseMediaType(request.getContentType()).isCompatibleWith(MediaType.valueOf("text/csv"))) {
+            summary = stayImportService.importCsv(principal.getName(), body, result -> writeLine(out, result));
+        } else {
+            summary = stayImportService.importJsonLines(principal.getName(), body, result -> writeLine(out, result));
+        }
+        writeLine(out, summary);
+        out.flush();
+    }
+
+    private void writeLine(PrintWriter out, Object value) {
+        try {
+            out.write(objectMapper.writeValueAsString(value));
+            out.write('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @GetMapping(value = "/stays/{stayId}/index-status")
+    public StayIndexState getIndexStatus(@PathVariable Long stayId, Principal principal) {
+        return stayService.indexState(stayId, principal.getName());
     }
 
     @DeleteMapping("/stays/{stayId}")
@@ -66,7 +194,11 @@ public class StayController {
     }
 
     @GetMapping(value = "/stays/reservations/{stayId}")
-    public List<Reservation> listReservations(@PathVariable Long stayId) {
-        return reservationService.listByStay(stayId);
+    public ReservationPage listReservations(
+            @PathVariable Long stayId,
+            @RequestParam(name = "status", defaultValue = "ALL") ReservationStatus status,        // UPCOMING, PAST or ALL
+            @RequestParam(name = "page_size", required = false) Integer pageSize,
+            @RequestParam(name = "cursor", required = false) String cursor) {       // next_cursor of the previous page
+        return reservationService.listByStay(stayId, status, ReservationPage.pageSize(pageSize), cursor);
     }
 }
\ No newline at end of file
@@ -0,0 +1,7 @@
+package com.laioffer.staybooking.exception;
+
+public class HoldLimitExceededException extends RuntimeException {
+    public HoldLimitExceededException(String message) {
+        super(message);
+    }
+}
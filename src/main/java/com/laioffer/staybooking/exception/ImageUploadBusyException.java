@@ -0,0 +1,7 @@
+package com.laioffer.staybooking.exception;
+
+public class ImageUploadBusyException extends RuntimeException {
+    public ImageUploadBusyException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,8 @@
+package com.laioffer.staybooking.exception;
+
+
+public class InvalidSearchCursorException extends RuntimeException {
+    public InvalidSearchCursorException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,8 @@
+package com.laioffer.staybooking.exception;
+
+
+public class InvalidSearchDistanceException extends RuntimeException {
+    public InvalidSearchDistanceException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,7 @@
+package com.laioffer.staybooking.exception;
+
+public class ReindexInProgressException extends RuntimeException {
+    public ReindexInProgressException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,23 @@
+package com.laioffer.staybooking.model;
+
+import javax.persistence.EmbeddedId;
+import javax.persistence.Entity;
+import javax.persistence.Table;
+
+/*A booked night moved out of stay_reserved_date once it is older than the archive horizon (see ReservedDateArchiver), so the hot
+table and its primary key only hold the nights that search and booking can still ask about. Same key, but no foreign key to
+stay: the archive is only read for calendars of past months and occupancy rebuilds.*/
+@Entity
+@Table(name = "stay_reserved_date_archive")
+public class ArchivedStayReservedDate {
+
+    @EmbeddedId
+    private StayReservedDateKey id;
+
+    public ArchivedStayReservedDate() {
+    }
+
+    public StayReservedDateKey getId() {
+        return id;
+    }
+}
@@ -0,0 +1,31 @@
+package com.laioffer.staybooking.model;
+
+import java.time.LocalDate;
+
+/*Booked nights of one stay in [from, to), run-length encoded: booked holds pairs (offset, length), where offset counts days from
+"from", so {"from":"2024-05-01","to":"2025-05-01","booked":[3,2,40,7]} means May 4-5 and June 10-16 are taken.
+Every other night in the range is free.*/
+public class AvailabilityCalendar {
+
+    private final LocalDate from;
+    private final LocalDate to;
+    private final int[] booked;
+
+    public AvailabilityCalendar(LocalDate from, LocalDate to, int[] booked) {
+        this.from = from;
+        this.to = to;
+        this.booked = booked;
+    }
+
+    public LocalDate getFrom() {
+        return from;
+    }
+
+    public LocalDate getTo() {
+        return to;
+    }
+
+    public int[] getBooked() {
+        return booked;
+    }
+}
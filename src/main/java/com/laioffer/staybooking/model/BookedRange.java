@@ -0,0 +1,31 @@
+package com.laioffer.staybooking.model;
+
+import org.springframework.data.elasticsearch.annotations.DateFormat;
+import org.springframework.data.elasticsearch.annotations.Field;
+import org.springframework.data.elasticsearch.annotations.FieldType;
+
+import java.time.LocalDate;
+
+/*One run of consecutive booked nights inside a Location document. The field names are the ones an Elasticsearch date_range expects,
+so the object is stored as {"gte": checkin, "lt": checkout}: checkout is exclusive, just like a Reservation.*/
+public class BookedRange {
+
+    @Field(type = FieldType.Date, format = DateFormat.date)
+    private LocalDate gte;
+
+    @Field(type = FieldType.Date, format = DateFormat.date)
+    private LocalDate lt;
+
+    public BookedRange(LocalDate gte, LocalDate lt) {
+        this.gte = gte;
+        this.lt = lt;
+    }
+
+    public LocalDate getGte() {
+        return gte;
+    }
+
+    public LocalDate getLt() {
+        return lt;
+    }
+}
@@ -0,0 +1,35 @@
+package com.laioffer.staybooking.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.time.LocalDate;
+
+// one /search/flexible result: the stay and its earliest run of free nights inside the requested window
+public class FlexibleStayMatch {
+
+    private final StaySummary stay;
+
+    @JsonProperty("checkin_date")
+    private final LocalDate checkinDate;
+
+    @JsonProperty("checkout_date")
+    private final LocalDate checkoutDate;
+
+    public FlexibleStayMatch(StaySummary stay, LocalDate checkinDate, LocalDate checkoutDate) {
+        this.stay = stay;
+        this.checkinDate = checkinDate;
+        this.checkoutDate = checkoutDate;
+    }
+
+    public StaySummary getStay() {
+        return stay;
+    }
+
+    public LocalDate getCheckinDate() {
+        return checkinDate;
+    }
+
+    public LocalDate getCheckoutDate() {
+        return checkoutDate;
+    }
+}
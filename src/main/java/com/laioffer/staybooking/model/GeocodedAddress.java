@@ -0,0 +1,64 @@
+package com.laioffer.staybooking.model;
+
+import javax.persistence.*;
+import java.time.Instant;
+
+/*A geocoding result remembered by GeocodingCache, keyed by the SHA-256 of the normalized address (see AddressUtil).
+An address Google only matched partially is stored as well, with matched = false and no coordinates, so that adding it again
+fails without another call.*/
+@Entity
+@Table(name = "geocoded_address")
+public class GeocodedAddress {
+
+    @Id
+    @Column(name = "address_hash", length = 64)
+    private String addressHash;
+
+    @Column(nullable = false, length = 1024)
+    private String address;         // normalized
+
+    @Column(nullable = false)
+    private boolean matched;
+
+    private Double latitude;
+    private Double longitude;
+
+    @Column(name = "geocoded_at", nullable = false)
+    private Instant geocodedAt;
+
+    public GeocodedAddress() {
+    }
+
+    public GeocodedAddress(String addressHash, String address, boolean matched, Double latitude, Double longitude) {
+        this.addressHash = addressHash;
+        this.address = address;
+        this.matched = matched;
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.geocodedAt = Instant.now();
+    }
+
+    public String getAddressHash() {
+        return addressHash;
+    }
+
+    public String getAddress() {
+        return address;
+    }
+
+    public boolean isMatched() {
+        return matched;
+    }
+
+    public Double getLatitude() {
+        return latitude;
+    }
+
+    public Double getLongitude() {
+        return longitude;
+    }
+
+    public Instant getGeocodedAt() {
+        return geocodedAt;
+    }
+}
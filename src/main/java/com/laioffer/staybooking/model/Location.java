@@ -1,12 +1,15 @@
 package com.laioffer.staybooking.model;
 
 import org.springframework.data.annotation.Id;
+import org.springframework.data.elasticsearch.annotations.DateFormat;
 import org.springframework.data.elasticsearch.annotations.Document;
 import org.springframework.data.elasticsearch.annotations.Field;
 import org.springframework.data.elasticsearch.annotations.FieldType;
 import org.springframework.data.elasticsearch.annotations.GeoPointField;
 import org.springframework.data.elasticsearch.core.geo.GeoPoint;
 
+import java.util.List;
+
 
 /*part of a project that uses the Spring Data Elasticsearch library to interact with an Elasticsearch database.
 Elasticsearch is a search and analytics engine often used for indexing and querying large volumes of data.
@@ -32,6 +35,14 @@ public class Location {
     @GeoPointField
     private GeoPoint geoPoint;   // Geopoint class 里面有两个field - latitude and longitude
 
+    // copied from Stay so that search can filter on capacity inside the same ES query
+    @Field(type = FieldType.Integer)
+    private int guestNumber;
+
+    // future booked nights as [checkin, checkout) date ranges; search excludes documents with a range intersecting the requested stay
+    @Field(type = FieldType.Date_Range, format = DateFormat.date)
+    private List<BookedRange> bookedRanges;
+
     public Location(Long id, GeoPoint geoPoint) {
         this.id = id;
         this.geoPoint = geoPoint;
@@ -44,5 +55,23 @@ public class Location {
     public GeoPoint getGeoPoint() {
         return geoPoint;
     }
+
+    public int getGuestNumber() {
+        return guestNumber;
+    }
+
+    public Location setGuestNumber(int guestNumber) {
+        this.guestNumber = guestNumber;
+        return this;
+    }
+
+    public List<BookedRange> getBookedRanges() {
+        return bookedRanges;
+    }
+
+    public Location setBookedRanges(List<BookedRange> bookedRanges) {
+        this.bookedRanges = bookedRanges;
+        return this;
+    }
 }
 
@@ -0,0 +1,30 @@
+package com.laioffer.staybooking.model;
+
+/*One stay returned by a distance-sorted location search, together with the sort values it was returned at.
+Search results are ordered by (distance, id), so the last hit of a page is also the position to resume from on the next page.
+The id tie-break compares ids as numbers, like the fieldSort on the long id field of a location document in Elasticsearch,
+so every search path returns ties in the same order and a cursor from one path resumes correctly on another.*/
+public class LocationHit implements Comparable<LocationHit> {
+
+    private final Long id;
+    private final double distance;   // in kilometers
+
+    public LocationHit(Long id, double distance) {
+        this.id = id;
+        this.distance = distance;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public double getDistance() {
+        return distance;
+    }
+
+    @Override
+    public int compareTo(LocationHit other) {
+        int result = Double.compare(distance, other.distance);
+        return result != 0 ? result : Long.compare(id, other.id);
+    }
+}
@@ -0,0 +1,45 @@
+package com.laioffer.staybooking.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+// one stay in one month of the host occupancy report: {"stay_id":1,"month":"2024-05","booked_nights":12,"nights":31,"occupancy":0.387}
+public class MonthlyOccupancy {
+
+    @JsonProperty("stay_id")
+    private final Long stayId;
+
+    private final String month;
+
+    @JsonProperty("booked_nights")
+    private final int bookedNights;
+
+    private final int nights;
+
+    public MonthlyOccupancy(Long stayId, String month, int bookedNights, int nights) {
+        this.stayId = stayId;
+        this.month = month;
+        this.bookedNights = bookedNights;
+        this.nights = nights;
+    }
+
+    public Long getStayId() {
+        return stayId;
+    }
+
+    public String getMonth() {
+        return month;
+    }
+
+    public int getBookedNights() {
+        return bookedNights;
+    }
+
+    public int getNights() {
+        return nights;
+    }
+
+    // share of the month's nights that are booked, between 0 and 1
+    public double getOccupancy() {
+        return (double) bookedNights / nights;
+    }
+}
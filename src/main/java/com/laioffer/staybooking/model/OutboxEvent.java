@@ -0,0 +1,51 @@
+package com.laioffer.staybooking.model;
+
+import javax.persistence.*;
+import java.time.Instant;
+
+/*One row of the transactional outbox: written in the same transaction as the stay or reservation change it describes, so it
+exists exactly when the change was committed. OutboxService drains the table in id order and hands the events to every
+OutboxConsumer, which brings its derived view (the "loc" index, caches, ...) up to date.*/
+@Entity
+@Table(name = "outbox_event")
+public class OutboxEvent {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 32)
+    private OutboxEventType type;
+
+    @Column(name = "stay_id", nullable = false)
+    private Long stayId;
+
+    @Column(name = "created_at", nullable = false)
+    private Instant createdAt;
+
+    public OutboxEvent() {
+    }
+
+    public OutboxEvent(OutboxEventType type, Long stayId) {
+        this.type = type;
+        this.stayId = stayId;
+        this.createdAt = Instant.now();
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public OutboxEventType getType() {
+        return type;
+    }
+
+    public Long getStayId() {
+        return stayId;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+}
@@ -0,0 +1,6 @@
+package com.laioffer.staybooking.model;
+
+// what changed, see OutboxEvent. Every type refers to a stay; consumers read the stay's current state rather than a payload
+public enum OutboxEventType {
+    STAY_ADDED, STAY_DELETED, RESERVATION_ADDED, RESERVATION_CANCELLED
+}
@@ -0,0 +1,94 @@
+package com.laioffer.staybooking.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.time.Instant;
+
+/*Snapshot of a full reindex for GET /admin/reindex:
+{"status":"RUNNING","index":"loc_1700000000000","total":1000000,"processed":420000,"indexed":419800,"skipped":200,
+ "started_at":"...","stays_per_second":8400.0,"eta_seconds":69}
+processed counts stays read from MySQL and written (or skipped), total is the stay count when the job started.*/
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ReindexProgress {
+
+    private final ReindexStatus status;
+    private final String index;
+    private final long total;
+    private final long processed;
+    private final long indexed;
+    private final long skipped;
+
+    @JsonProperty("started_at")
+    private final Instant startedAt;
+
+    @JsonProperty("finished_at")
+    private final Instant finishedAt;
+
+    @JsonProperty("stays_per_second")
+    private final double staysPerSecond;
+
+    @JsonProperty("eta_seconds")
+    private final Long etaSeconds;
+
+    private final String error;
+
+    public ReindexProgress(ReindexStatus status, String index, long total, long processed, long indexed, long skipped,
+                           Instant startedAt, Instant finishedAt, double staysPerSecond, Long etaSeconds, String error) {
+        this.status = status;
+        this.index = index;
+        this.total = total;
+        this.processed = processed;
+        this.indexed = indexed;
+        this.skipped = skipped;
+        this.startedAt = startedAt;
+        this.finishedAt = finishedAt;
+        this.staysPerSecond = staysPerSecond;
+        this.etaSeconds = etaSeconds;
+        this.error = error;
+    }
+
+    public ReindexStatus getStatus() {
+        return status;
+    }
+
+    public String getIndex() {
+        return index;
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    public long getProcessed() {
+        return processed;
+    }
+
+    public long getIndexed() {
+        return indexed;
+    }
+
+    public long getSkipped() {
+        return skipped;
+    }
+
+    public Instant getStartedAt() {
+        return startedAt;
+    }
+
+    public Instant getFinishedAt() {
+        return finishedAt;
+    }
+
+    public double getStaysPerSecond() {
+        return staysPerSecond;
+    }
+
+    public Long getEtaSeconds() {
+        return etaSeconds;
+    }
+
+    public String getError() {
+        return error;
+    }
+}
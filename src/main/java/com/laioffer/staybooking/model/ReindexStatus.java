@@ -0,0 +1,6 @@
+package com.laioffer.staybooking.model;
+
+// state of the last full reindex of the location index, see LocationReindexService
+public enum ReindexStatus {
+    IDLE, RUNNING, COMPLETED, FAILED
+}
@@ -0,0 +1,62 @@
+package com.laioffer.staybooking.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.time.Instant;
+import java.time.LocalDate;
+
+// dates held in memory for a guest while they complete checkout, see ReservationHoldService
+public class ReservationHold {
+
+    @JsonProperty("hold_id")
+    private final String id;
+
+    @JsonProperty("stay_id")
+    private final Long stayId;
+
+    @JsonIgnore
+    private final String guest;
+
+    @JsonProperty("checkin_date")
+    private final LocalDate checkinDate;
+
+    @JsonProperty("checkout_date")
+    private final LocalDate checkoutDate;
+
+    @JsonProperty("expires_at")
+    private final Instant expiresAt;
+
+    public ReservationHold(String id, Long stayId, String guest, LocalDate checkinDate, LocalDate checkoutDate, Instant expiresAt) {
+        this.id = id;
+        this.stayId = stayId;
+        this.guest = guest;
+        this.checkinDate = checkinDate;
+        this.checkoutDate = checkoutDate;
+        this.expiresAt = expiresAt;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public Long getStayId() {
+        return stayId;
+    }
+
+    public String getGuest() {
+        return guest;
+    }
+
+    public LocalDate getCheckinDate() {
+        return checkinDate;
+    }
+
+    public LocalDate getCheckoutDate() {
+        return checkoutDate;
+    }
+
+    public Instant getExpiresAt() {
+        return expiresAt;
+    }
+}
@@ -0,0 +1,36 @@
+package com.laioffer.staybooking.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+
+/*One page of a reservation listing. Like SearchPage, next_cursor is opaque: pass it back as the cursor parameter (with the same
+status) to get the following page; it is null on the last page.*/
+public class ReservationPage {
+
+    private static final int DEFAULT_PAGE_SIZE = 20;
+    private static final int MAX_PAGE_SIZE = 100;
+
+    private final List<ReservationSummary> reservations;
+
+    @JsonProperty("next_cursor")
+    private final String nextCursor;
+
+    public ReservationPage(List<ReservationSummary> reservations, String nextCursor) {
+        this.reservations = reservations;
+        this.nextCursor = nextCursor;
+    }
+
+    // page_size request parameter, defaulted and clamped
+    public static int pageSize(Integer requested) {
+        return requested == null ? DEFAULT_PAGE_SIZE : Math.max(1, Math.min(requested, MAX_PAGE_SIZE));
+    }
+
+    public List<ReservationSummary> getReservations() {
+        return reservations;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+}
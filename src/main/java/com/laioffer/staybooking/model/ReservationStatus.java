@@ -0,0 +1,6 @@
+package com.laioffer.staybooking.model;
+
+// filter of reservation listings: upcoming (not checked out yet, soonest first), past (most recent first) or all (oldest first)
+public enum ReservationStatus {
+    UPCOMING, PAST, ALL
+}
@@ -0,0 +1,58 @@
+package com.laioffer.staybooking.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.time.LocalDate;
+
+// one row of a reservation listing, filled by a JPQL constructor expression instead of loading Reservation, Stay and User entities
+public class ReservationSummary {
+
+    private final Long id;
+
+    @JsonProperty("checkin_date")
+    private final LocalDate checkinDate;
+
+    @JsonProperty("checkout_date")
+    private final LocalDate checkoutDate;
+
+    @JsonProperty("stay_id")
+    private final Long stayId;
+
+    @JsonProperty("stay_name")
+    private final String stayName;
+
+    private final String guest;
+
+    public ReservationSummary(Long id, LocalDate checkinDate, LocalDate checkoutDate, Long stayId, String stayName, String guest) {
+        this.id = id;
+        this.checkinDate = checkinDate;
+        this.checkoutDate = checkoutDate;
+        this.stayId = stayId;
+        this.stayName = stayName;
+        this.guest = guest;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public LocalDate getCheckinDate() {
+        return checkinDate;
+    }
+
+    public LocalDate getCheckoutDate() {
+        return checkoutDate;
+    }
+
+    public Long getStayId() {
+        return stayId;
+    }
+
+    public String getStayName() {
+        return stayName;
+    }
+
+    public String getGuest() {
+        return guest;
+    }
+}
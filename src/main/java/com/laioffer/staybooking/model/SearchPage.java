@@ -0,0 +1,28 @@
+package com.laioffer.staybooking.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+
+/*One page of /search (StaySummary) or /search/flexible (FlexibleStayMatch) results, closest stay first.
+next_cursor is opaque to the client: pass it back as the cursor parameter (with the same search parameters) to get the following page. It is null once there are no more results.*/
+public class SearchPage<T> {
+
+    private final List<T> stays;
+
+    @JsonProperty("next_cursor")
+    private final String nextCursor;
+
+    public SearchPage(List<T> stays, String nextCursor) {
+        this.stays = stays;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<T> getStays() {
+        return stays;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+}
@@ -3,12 +3,14 @@ package com.laioffer.staybooking.model;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import org.hibernate.annotations.BatchSize;
 
 import javax.persistence.*;
+import java.time.Instant;
 import java.util.List;
 
 @Entity
-@Table(name = "stay")
+@Table(name = "stay", indexes = @Index(name = "idx_stay_index_status", columnList = "index_status"))   // StayGeocodingService polls the pending stays
 @JsonDeserialize(builder = Stay.Builder.class)
 public class Stay {
 
@@ -24,13 +26,40 @@ public class Stay {
     @JoinColumn(name = "user_id")
     private User host;           // foreign key
 
+    // geocoded coordinates, kept here as well as in the location index so that the index can be rebuilt from MySQL
+    @JsonIgnore
+    private Double latitude;
+    @JsonIgnore
+    private Double longitude;
+
+    // geocoding and indexing happen after the stay is created, see StayGeocodingService
+    @Enumerated(EnumType.STRING)
+    @Column(name = "index_status")
+    private StayIndexStatus indexStatus;
+    @JsonIgnore
+    @Column(name = "geocode_attempts")
+    private int geocodeAttempts;
+    @JsonIgnore
+    @Column(name = "next_geocode_at")
+    private Instant nextGeocodeAt;      // null: as soon as possible
+
+    // bumped in every transaction that adds or removes booked nights, see AvailabilityCalendarService. Only ever written by
+    // that bulk UPDATE, never by saving the entity, so a stale copy can't move it back
+    @JsonIgnore
+    @Column(name = "calendar_version", nullable = false, updatable = false, columnDefinition = "bigint default 0")
+    private long calendarVersion;
 
+    // no cascade: nights are written through StayReservationDateRepository, and StayService.delete removes them with one bulk
+    // DELETE, which a cascade would otherwise precede by loading and deleting every night one by one
     @JsonIgnore
-    @OneToMany(mappedBy = "stay", cascade = CascadeType.ALL, fetch=FetchType.LAZY)
+    @OneToMany(mappedBy = "stay", fetch=FetchType.LAZY)
     private List<StayReservedDate> reservedDates;
 
 
-    @OneToMany(mappedBy = "stay", cascade = CascadeType.ALL, fetch=FetchType.EAGER)    // 可以不写，因为在StayImage里已经设置好database里的reference关系。但是写完更更方便，我们可以直接一下子把信息调出来。
+    // lazy: list endpoints use StaySummary instead, /stays/{stayId} fetches the images with an entity graph,
+    // and anything else touching them (e.g. reservations) loads them for up to 50 stays per query
+    @OneToMany(mappedBy = "stay", cascade = CascadeType.ALL, fetch=FetchType.LAZY)    // 可以不写，因为在StayImage里已经设置好database里的reference关系。但是写完更更方便，我们可以直接一下子把信息调出来。
+    @BatchSize(size = 50)
     private List<StayImage> images;
 
     public Stay() {}
@@ -44,6 +73,7 @@ public class Stay {
         this.host = builder.host;
         this.reservedDates = builder.reservedDates;
         this.images = builder.images;
+        this.indexStatus = StayIndexStatus.PENDING;
     }
 
     public List<StayImage> getImages() {
@@ -82,6 +112,26 @@ public class Stay {
         return reservedDates;
     }
 
+    public Double getLatitude() {
+        return latitude;
+    }
+
+    public Double getLongitude() {
+        return longitude;
+    }
+
+    // stays created before the column existed were indexed right away
+    @JsonProperty("index_status")
+    public StayIndexStatus getIndexStatus() {
+        return indexStatus == null ? StayIndexStatus.INDEXED : indexStatus;
+    }
+
+    public Stay setCoordinates(Double latitude, Double longitude) {
+        this.latitude = latitude;
+        this.longitude = longitude;
+        return this;
+    }
+
     public static class Builder {
 
         @JsonProperty("id")
@@ -0,0 +1,43 @@
+package com.laioffer.staybooking.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+// outcome of one record of a bulk import, one line of the streamed response:
+// {"line":3,"stay_id":42} for an imported stay (indexed later, see StayGeocodingService), {"line":4,"error":"..."} for a rejected record
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class StayImportResult {
+
+    private final int line;
+
+    @JsonProperty("stay_id")
+    private final Long stayId;
+
+    private final String error;
+
+    private StayImportResult(int line, Long stayId, String error) {
+        this.line = line;
+        this.stayId = stayId;
+        this.error = error;
+    }
+
+    public static StayImportResult imported(int line, Long stayId) {
+        return new StayImportResult(line, stayId, null);
+    }
+
+    public static StayImportResult rejected(int line, String error) {
+        return new StayImportResult(line, null, error);
+    }
+
+    public int getLine() {
+        return line;
+    }
+
+    public Long getStayId() {
+        return stayId;
+    }
+
+    public String getError() {
+        return error;
+    }
+}
@@ -0,0 +1,32 @@
+package com.laioffer.staybooking.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+// last line of a bulk import response: {"imported":4990,"rejected":10,"elapsed_ms":5231}
+public class StayImportSummary {
+
+    private final int imported;
+
+    private final int rejected;
+
+    @JsonProperty("elapsed_ms")
+    private final long elapsedMs;
+
+    public StayImportSummary(int imported, int rejected, long elapsedMs) {
+        this.imported = imported;
+        this.rejected = rejected;
+        this.elapsedMs = elapsedMs;
+    }
+
+    public int getImported() {
+        return imported;
+    }
+
+    public int getRejected() {
+        return rejected;
+    }
+
+    public long getElapsedMs() {
+        return elapsedMs;
+    }
+}
@@ -0,0 +1,34 @@
+package com.laioffer.staybooking.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+// indexing progress of one stay, polled by the host after creating it: {"stay_id":1,"index_status":"PENDING","geocode_attempts":2}
+public class StayIndexState {
+
+    @JsonProperty("stay_id")
+    private final Long stayId;
+
+    @JsonProperty("index_status")
+    private final StayIndexStatus indexStatus;
+
+    @JsonProperty("geocode_attempts")
+    private final int geocodeAttempts;
+
+    public StayIndexState(Long stayId, StayIndexStatus indexStatus, int geocodeAttempts) {
+        this.stayId = stayId;
+        this.indexStatus = indexStatus == null ? StayIndexStatus.INDEXED : indexStatus;    // stays created before the column existed
+        this.geocodeAttempts = geocodeAttempts;
+    }
+
+    public Long getStayId() {
+        return stayId;
+    }
+
+    public StayIndexStatus getIndexStatus() {
+        return indexStatus;
+    }
+
+    public int getGeocodeAttempts() {
+        return geocodeAttempts;
+    }
+}
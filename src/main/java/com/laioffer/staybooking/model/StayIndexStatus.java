@@ -0,0 +1,8 @@
+package com.laioffer.staybooking.model;
+
+// where a new stay is on its way into search, see StayGeocodingService:
+// PENDING waits for (another) geocoding attempt, INDEXING is geocoded and queued in the outbox, INDEXED is searchable,
+// FAILED means the address could not be geocoded and the stay will not show up in search
+public enum StayIndexStatus {
+    PENDING, INDEXING, INDEXED, FAILED
+}
@@ -0,0 +1,31 @@
+package com.laioffer.staybooking.model;
+
+import javax.persistence.Column;
+import javax.persistence.EmbeddedId;
+import javax.persistence.Entity;
+import javax.persistence.Table;
+
+/*Booked nights of one stay in one calendar month, kept current by ReservationService on every booking and cancellation
+(see OccupancyService). Reading a year of a host's occupancy is then twelve rows per stay instead of a scan of every
+reservation the stays ever had.*/
+@Entity
+@Table(name = "stay_occupancy")
+public class StayOccupancy {
+
+    @EmbeddedId
+    private StayOccupancyKey id;
+
+    @Column(name = "booked_nights", nullable = false)
+    private int bookedNights;
+
+    public StayOccupancy() {
+    }
+
+    public StayOccupancyKey getId() {
+        return id;
+    }
+
+    public int getBookedNights() {
+        return bookedNights;
+    }
+}
@@ -0,0 +1,45 @@
+package com.laioffer.staybooking.model;
+
+import javax.persistence.Column;
+import javax.persistence.Embeddable;
+import java.io.Serializable;
+import java.time.LocalDate;
+import java.util.Objects;
+
+// one tally per stay and calendar month, see StayOccupancy
+@Embeddable
+public class StayOccupancyKey implements Serializable {
+    private Long stay_id;
+
+    @Column(name = "month")
+    private LocalDate month;      // first day of the month
+
+    public StayOccupancyKey() {
+    }
+
+    public StayOccupancyKey(Long stay_id, LocalDate month) {
+        this.stay_id = stay_id;
+        this.month = month;
+    }
+
+    public Long getStay_id() {
+        return stay_id;
+    }
+
+    public LocalDate getMonth() {
+        return month;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        StayOccupancyKey that = (StayOccupancyKey) o;
+        return Objects.equals(stay_id, that.stay_id) && Objects.equals(month, that.month);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(stay_id, month);
+    }
+}
@@ -1,11 +1,13 @@
 package com.laioffer.staybooking.model;
 
+import org.springframework.data.domain.Persistable;
+
 import javax.persistence.*;
 
 /*an entity class that represents the relationship between Stay and ReservedDate entities using a join table named stay_reserved_date. */
 @Entity             // This annotation marks the class as a JPA entity, indicating that it corresponds to a table in the database.
-@Table(name = "stay_reserved_date")
-public class StayReservedDate {
+@Table(name = "stay_reserved_date", indexes = @Index(name = "idx_stay_reserved_date_date", columnList = "date"))    // for loading by date and archiving past nights in date order, see ReservedDateArchiver
+public class StayReservedDate implements Persistable<StayReservedDateKey> {
 
     @EmbeddedId    //This annotation indicates that the field id is used as the embedded composite primary key for the table. The primary key is represented by the StayReservedDateKey class.
     private StayReservedDateKey id;
@@ -13,6 +15,12 @@ public class StayReservedDate {
     @ManyToOne                // This annotation indicates a many-to-one relationship between StayReservedDate and Stay entities. This implies that multiple instances of StayReservedDate can be associated with one Stay entity.
     private Stay stay;
 
+    // the key is assigned, not generated, so Spring Data can't tell a new night from an existing one and saveAll would
+    // merge (SELECT, then INSERT) every night. A night built by the constructor below is always new, so it is persisted
+    // directly and all nights of a reservation go out as one JDBC batch.
+    @Transient
+    private boolean isNew = true;
+
     public StayReservedDate() {
     }
 
@@ -21,10 +29,22 @@ public class StayReservedDate {
         this.stay = stay;
     }
 
+    @Override
     public StayReservedDateKey getId() {
         return id;
     }
 
+    @Override
+    public boolean isNew() {
+        return isNew;
+    }
+
+    @PostLoad
+    @PostPersist
+    void markNotNew() {
+        isNew = false;
+    }
+
     public Stay getStay() {
         return stay;
     }
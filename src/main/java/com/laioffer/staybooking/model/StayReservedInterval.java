@@ -0,0 +1,49 @@
+package com.laioffer.staybooking.model;
+
+import javax.persistence.*;
+import java.time.LocalDate;
+
+/*Interval storage of booked nights (reservation.storage=intervals): one row per booked [checkin, checkout) of a stay,
+instead of one stay_reserved_date row per night. Intervals of one stay never overlap.*/
+@Entity
+@Table(name = "stay_reserved_interval", indexes = @Index(name = "idx_stay_reserved_interval_stay_checkin", columnList = "stay_id, checkin_date"))
+public class StayReservedInterval {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "stay_id", nullable = false)
+    private Long stayId;
+
+    @Column(name = "checkin_date", nullable = false)
+    private LocalDate checkinDate;
+
+    @Column(name = "checkout_date", nullable = false)       // exclusive, like Reservation
+    private LocalDate checkoutDate;
+
+    public StayReservedInterval() {
+    }
+
+    public StayReservedInterval(Long stayId, LocalDate checkinDate, LocalDate checkoutDate) {
+        this.stayId = stayId;
+        this.checkinDate = checkinDate;
+        this.checkoutDate = checkoutDate;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public Long getStayId() {
+        return stayId;
+    }
+
+    public LocalDate getCheckinDate() {
+        return checkinDate;
+    }
+
+    public LocalDate getCheckoutDate() {
+        return checkoutDate;
+    }
+}
@@ -0,0 +1,54 @@
+package com.laioffer.staybooking.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.Collections;
+import java.util.List;
+
+/*Read model for the list endpoints (/search and /stays): the stay columns plus its first image only, filled by a JPQL
+constructor expression in StayRepository so no Stay entity and no stay_image collection is loaded.
+The JSON keeps the shape of Stay (images is a list of {url}), so clients reading images[0].url work unchanged; the full
+image list (and the host) come from /stays/{stayId}.*/
+public class StaySummary {
+
+    private final Long id;
+    private final String name;
+    private final String description;
+    private final String address;
+    @JsonProperty("guest_number")
+    private final int guestNumber;
+    private final List<StayImage> images;
+
+    public StaySummary(Long id, String name, String description, String address, int guestNumber, String imageUrl) {
+        this.id = id;
+        this.name = name;
+        this.description = description;
+        this.address = address;
+        this.guestNumber = guestNumber;
+        this.images = imageUrl == null ? Collections.emptyList() : Collections.singletonList(new StayImage(imageUrl, null));
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public String getAddress() {
+        return address;
+    }
+
+    public int getGuestNumber() {
+        return guestNumber;
+    }
+
+    public List<StayImage> getImages() {
+        return images;
+    }
+}
@@ -2,5 +2,6 @@ package com.laioffer.staybooking.model;
 
 public enum UserRole {
     ROLE_HOST,
-    ROLE_GUEST
+    ROLE_GUEST,
+    ROLE_ADMIN        // operators, e.g. for /admin/reindex. There is no sign-up for it: grant it in the authority table
 }
@@ -0,0 +1,33 @@
+package com.laioffer.staybooking.repository;
+
+import com.laioffer.staybooking.model.ArchivedStayReservedDate;
+import com.laioffer.staybooking.model.StayReservedDateKey;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.List;
+
+@Repository
+public interface ArchivedStayReservedDateRepository extends JpaRepository<ArchivedStayReservedDate, StayReservedDateKey> {
+
+    // first half of an archive batch: copies the oldest limit nights before date, in the (date, stay_id) order of the hot table's
+    // date index, so StayReservationDateRepository.deleteBatchBefore removes exactly these rows afterwards
+    @Modifying
+    @Query(value = "INSERT IGNORE INTO stay_reserved_date_archive (stay_id, date) "
+            + "SELECT stay_id, date FROM stay_reserved_date WHERE date < ?1 ORDER BY date, stay_id LIMIT ?2", nativeQuery = true)
+    int copyBatchBefore(LocalDate date, int limit);
+
+    @Query(value = "SELECT a.id.date FROM ArchivedStayReservedDate a WHERE a.id.stay_id = ?1 AND a.id.date BETWEEN ?2 AND ?3 ORDER BY a.id.date")
+    List<LocalDate> findDatesByStayIdAndDateBetween(Long stayId, LocalDate startDate, LocalDate endDate);
+
+    @Modifying
+    @Query(value = "DELETE FROM ArchivedStayReservedDate a WHERE a.id.stay_id = ?1 AND a.id.date >= ?2 AND a.id.date < ?3")
+    int deleteByStayIdAndDateRange(Long stayId, LocalDate checkinDate, LocalDate checkoutDate);
+
+    @Modifying
+    @Query(value = "DELETE FROM ArchivedStayReservedDate a WHERE a.id.stay_id = ?1")
+    int deleteByStayId(Long stayId);
+}
@@ -1,9 +1,41 @@
 package com.laioffer.staybooking.repository;
 
+import com.laioffer.staybooking.model.BookedRange;
+import com.laioffer.staybooking.model.Location;
+import com.laioffer.staybooking.model.LocationHit;
+
+import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 // 创建这个CustomLocationRepository就是为了用search api。那search API怎么implement？需要自己做。需要自己写一个class去implement这个method
 public interface CustomLocationRepository {
 
-    List<Long> searchByDistance(double lat, double lon, String distance);
+    String DEFAULT_DISTANCE = "50";   // km
+
+    // writes go through index/remove rather than LocationRepository.save/deleteById, so that every implementation sees them
+    void index(Location location);
+
+    void remove(Long id);
+
+    // bulk forms for the outbox consumer: one round trip (and one refresh) per batch instead of per stay
+    void indexAll(List<Location> locations);
+
+    void removeAll(Collection<Long> ids);
+
+    // every location within distance, with its geoPoint and guestNumber (bookedRanges is left out)
+    List<Location> searchByDistance(double lat, double lon, String distance);
+
+    // one query for stays that are within distance, can host guestNumber guests and have no booked night in [checkinDate, checkoutDate).
+    // Returns at most size hits ordered by (distance, id), starting right after searchAfter (null for the first page).
+    // Implementations that don't index booked dates skip that filter; callers recheck availability anyway.
+    // With null dates no date filter is applied at all (flexible-date search checks the dates itself).
+    List<LocationHit> searchAvailable(double lat, double lon, String distance, int guestNumber, LocalDate checkinDate, LocalDate checkoutDate, LocationHit searchAfter, int size);
+
+    // replaces the booked ranges of each given location document (by id) without touching its other fields
+    void updateBookedRanges(Map<Long, List<BookedRange>> bookedRanges);
+
+    // starts building a fresh index next to the live one, e.g. after a mapping change, see LocationReindexService
+    LocationIndexRebuild startRebuild();
 }
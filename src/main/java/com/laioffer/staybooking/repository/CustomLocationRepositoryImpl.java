@@ -1,15 +1,48 @@
 package com.laioffer.staybooking.repository;
 
 
+import com.laioffer.staybooking.model.BookedRange;
 import com.laioffer.staybooking.model.Location;
+import com.laioffer.staybooking.model.LocationHit;
+import org.elasticsearch.action.admin.indices.settings.put.UpdateSettingsRequest;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.delete.DeleteRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
 import org.elasticsearch.common.unit.DistanceUnit;
+import org.elasticsearch.index.query.BoolQueryBuilder;
 import org.elasticsearch.index.query.GeoDistanceQueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.sort.SortBuilders;
+import org.elasticsearch.search.sort.SortOrder;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.elasticsearch.BulkFailureException;
 import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.IndexOperations;
 import org.springframework.data.elasticsearch.core.SearchHits;
+import org.springframework.data.elasticsearch.core.SearchHitsIterator;
+import org.springframework.data.elasticsearch.core.document.Document;
+import org.springframework.data.elasticsearch.core.index.AliasAction;
+import org.springframework.data.elasticsearch.core.index.AliasActionParameters;
+import org.springframework.data.elasticsearch.core.index.AliasActions;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+import org.springframework.data.elasticsearch.core.query.FetchSourceFilter;
 import org.springframework.data.elasticsearch.core.query.NativeSearchQueryBuilder;
+import org.springframework.data.elasticsearch.core.query.UpdateQuery;
 
 
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 /*
@@ -19,35 +52,199 @@ the Spring Data Elasticsearch framework for querying the Elasticsearch database.
 
 public class CustomLocationRepositoryImpl implements CustomLocationRepository {
 
-    private static final String DEFAULT_DISTANCE = "50";
     private final ElasticsearchOperations elasticsearchOperations;   // this class object interacts with the Elasticsearch database
+    private final RestHighLevelClient client;      // for what ElasticsearchOperations cannot do: index settings and bulk deletes
 
 
-    public CustomLocationRepositoryImpl(ElasticsearchOperations elasticsearchOperations) {
+    public CustomLocationRepositoryImpl(ElasticsearchOperations elasticsearchOperations, RestHighLevelClient client) {
         this.elasticsearchOperations = elasticsearchOperations;
+        this.client = client;
     }
 
+    // an index created before guestNumber/bookedRanges existed would otherwise map them dynamically as plain objects
+    @PostConstruct
+    public void updateMapping() {
+        IndexOperations indexOperations = elasticsearchOperations.indexOps(Location.class);
+        if (indexOperations.exists()) {
+            indexOperations.putMapping();
+        }
+    }
+
+
+    @Override
+    public void index(Location location) {
+        elasticsearchOperations.save(location);
+        elasticsearchOperations.indexOps(Location.class).refresh();     // like ElasticsearchRepository.save, make it searchable right away
+    }
+
+    @Override
+    public void remove(Long id) {
+        elasticsearchOperations.delete(id.toString(), Location.class);
+        elasticsearchOperations.indexOps(Location.class).refresh();
+    }
+
+    @Override
+    public void indexAll(List<Location> locations) {
+        if (locations.isEmpty()) {
+            return;
+        }
+        elasticsearchOperations.save(locations);        // a single bulk request
+        elasticsearchOperations.indexOps(Location.class).refresh();
+    }
 
     @Override
-    public List<Long> searchByDistance(double lat, double lon, String distance) {
+    public void removeAll(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        // a single bulk request; ElasticsearchOperations only deletes one document per request (or by query, which scrolls)
+        String index = elasticsearchOperations.getIndexCoordinatesFor(Location.class).getIndexName();
+        BulkRequest request = new BulkRequest();
+        for (Long id : ids) {
+            request.add(new DeleteRequest(index, id.toString()));
+        }
+        BulkResponse response;
+        try {
+            response = client.bulk(request, RequestOptions.DEFAULT);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (response.hasFailures()) {         // a document that was already gone is not a failure
+            Map<String, String> failures = new HashMap<>();
+            for (BulkItemResponse item : response) {
+                if (item.isFailed()) {
+                    failures.put(item.getId(), item.getFailureMessage());
+                }
+            }
+            throw new BulkFailureException("Bulk delete has failures: " + failures, failures);
+        }
+        elasticsearchOperations.indexOps(Location.class).refresh();
+    }
+
+    @Override
+    public List<Location> searchByDistance(double lat, double lon, String distance) {
         if (distance == null || distance.isEmpty()) {
             distance = DEFAULT_DISTANCE;
         }
         NativeSearchQueryBuilder queryBuilder = new NativeSearchQueryBuilder();
-        queryBuilder.withFilter(new GeoDistanceQueryBuilder("geoPoint").point(lat, lon).distance(distance, DistanceUnit.KILOMETERS));
+        queryBuilder.withFilter(new GeoDistanceQueryBuilder("geoPoint").point(lat, lon).distance(distance, DistanceUnit.KILOMETERS))
+                .withSourceFilter(new FetchSourceFilter(null, new String[]{"bookedRanges"}));
 
+        // a plain search stops at index.max_result_window hits, so scroll through everything inside the radius instead
+        List<Location> locations = new ArrayList<>();
+        try (SearchHitsIterator<Location> hits = elasticsearchOperations.searchForStream(queryBuilder.build(), Location.class)) {
+            hits.forEachRemaining(hit -> locations.add(hit.getContent()));
+        }
+        return locations;
+    }
+
+    @Override
+    public List<LocationHit> searchAvailable(double lat, double lon, String distance, int guestNumber, LocalDate checkinDate, LocalDate checkoutDate, LocationHit searchAfter, int size) {
+        if (distance == null || distance.isEmpty()) {
+            distance = DEFAULT_DISTANCE;
+        }
+        BoolQueryBuilder query = QueryBuilders.boolQuery()
+                .filter(new GeoDistanceQueryBuilder("geoPoint").point(lat, lon).distance(distance, DistanceUnit.KILOMETERS))
+                .filter(QueryBuilders.rangeQuery("guestNumber").gte(guestNumber));
+        if (checkinDate != null && checkoutDate != null) {
+            // both sides are [checkin, checkout), so a stay checking out on our checkin date does not intersect
+            query.mustNot(QueryBuilders.rangeQuery("bookedRanges").gte(checkinDate.toString()).lt(checkoutDate.toString()).relation("intersects"));
+        }
+
+        NativeSearchQueryBuilder queryBuilder = new NativeSearchQueryBuilder();
+        queryBuilder.withQuery(query)
+                .withSorts(
+                        SortBuilders.geoDistanceSort("geoPoint", lat, lon).unit(DistanceUnit.KILOMETERS).order(SortOrder.ASC),
+                        SortBuilders.fieldSort("id").order(SortOrder.ASC))        // tie-break so that search_after never skips or repeats a stay
+                .withSourceFilter(new FetchSourceFilter(new String[]{"id"}, null))   // bookedRanges can be long and is not needed here
+                .withTrackTotalHits(false)
+                .withPageable(PageRequest.of(0, size));
+        if (searchAfter != null) {
+            queryBuilder.withSearchAfter(List.of(searchAfter.getDistance(), searchAfter.getId()));
+        }
 
         SearchHits<Location> searchResult = elasticsearchOperations.search(queryBuilder.build(), Location.class);
         return searchResult.getSearchHits().stream()
-                .map(hit -> hit.getContent().getId())
+                .map(hit -> new LocationHit(hit.getContent().getId(), ((Number) hit.getSortValues().get(0)).doubleValue()))
                 .collect(Collectors.toList());
-        /*
-        // 上面方法不需要new一个 ArrayList，先用searchResult创建一个stream之后，把每个stream挨个的map一下。
-        List<Long> locationIDs = new ArrayList<>();
-        for (SearchHit<Location> hit : searchResult.getSearchHits()) {
-            LocationIDs.add(hit.getContent().getId());
+    }
+
+    @Override
+    public void updateBookedRanges(Map<Long, List<BookedRange>> bookedRanges) {
+        if (bookedRanges.isEmpty()) {
+            return;
         }
-        return locationIDs；
-        */
+        List<UpdateQuery> updateQueries = new ArrayList<>(bookedRanges.size());
+        bookedRanges.forEach((id, ranges) -> {
+            Document document = Document.create();
+            document.put("bookedRanges", ranges.stream()
+                    .map(range -> Map.of(
+                            "gte", range.getGte().toString(),
+                            "lt", range.getLt().toString()))
+                    .collect(Collectors.toList()));
+            updateQueries.add(UpdateQuery.builder(id.toString()).withDocument(document).build());
+        });
+        elasticsearchOperations.bulkUpdate(updateQueries, elasticsearchOperations.getIndexCoordinatesFor(Location.class));
+    }
+
+    /*Builds into a new index loc_<timestamp> with the current mapping of Location. Refreshing is switched off while it fills,
+    so bulk requests don't pay for making every segment searchable. publish() turns refreshing back on, refreshes once and
+    then moves the "loc" alias to the new index in one atomic _aliases request, so searches switch over without a gap;
+    the indices behind the alias before are deleted afterwards. The first rebuild replaces a concrete "loc" index (as
+    Spring Data creates it) by the alias in that same request.*/
+    @Override
+    public LocationIndexRebuild startRebuild() {
+        IndexCoordinates live = elasticsearchOperations.getIndexCoordinatesFor(Location.class);
+        String alias = live.getIndexName();
+        IndexCoordinates target = IndexCoordinates.of(alias + "_" + System.currentTimeMillis());
+        IndexOperations targetOperations = elasticsearchOperations.indexOps(target);
+        targetOperations.create(Map.of("index.refresh_interval", "-1"), targetOperations.createMapping(Location.class));
+
+        return new LocationIndexRebuild() {
+            @Override
+            public String getName() {
+                return target.getIndexName();
+            }
+
+            @Override
+            public void indexAll(List<Location> locations) {
+                if (!locations.isEmpty()) {
+                    elasticsearchOperations.save(locations, target);       // a single bulk request
+                }
+            }
+
+            @Override
+            public void publish() {
+                try {
+                    client.indices().putSettings(new UpdateSettingsRequest(target.getIndexName())
+                            .settings(org.elasticsearch.common.settings.Settings.builder().putNull("index.refresh_interval")), RequestOptions.DEFAULT);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                targetOperations.refresh();
+
+                IndexOperations liveOperations = elasticsearchOperations.indexOps(live);
+                Set<String> previous = liveOperations.exists() ? liveOperations.getAliasesForIndex(alias).keySet() : Set.of();
+                AliasActions actions = new AliasActions();
+                if (previous.contains(alias)) {
+                    actions.add(new AliasAction.RemoveIndex(AliasActionParameters.builder().withIndices(alias).build()));
+                } else if (!previous.isEmpty()) {
+                    actions.add(new AliasAction.Remove(AliasActionParameters.builder().withIndices(previous.toArray(new String[0])).withAliases(alias).build()));
+                }
+                actions.add(new AliasAction.Add(AliasActionParameters.builder().withIndices(target.getIndexName()).withAliases(alias).build()));
+                targetOperations.alias(actions);
+
+                for (String index : previous) {
+                    if (!index.equals(alias)) {           // a concrete "loc" index was already removed by the alias request
+                        elasticsearchOperations.indexOps(IndexCoordinates.of(index)).delete();
+                    }
+                }
+            }
+
+            @Override
+            public void abort() {
+                targetOperations.delete();
+            }
+        };
     }
-}
\ No newline at end of file
+}
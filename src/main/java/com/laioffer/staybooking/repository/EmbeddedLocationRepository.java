@@ -0,0 +1,306 @@
+package com.laioffer.staybooking.repository;
+
+import com.laioffer.staybooking.model.BookedRange;
+import com.laioffer.staybooking.model.Location;
+import com.laioffer.staybooking.model.LocationHit;
+import com.laioffer.staybooking.util.GeoUtil;
+import org.springframework.data.elasticsearch.core.geo.GeoPoint;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/*An in-process alternative to the Elasticsearch location index, for small deployments and for load tests without a cluster
+(location.repository=embedded, see LocationRepositoryConfig).
+
+All locations live in parallel primitive arrays (struct of arrays): ids, latitudes, longitudes and guest numbers, so a query
+touches no boxed Long or GeoPoint per stay. A uniform grid of CELL_DEGREES x CELL_DEGREES cells maps each cell to the array
+slots inside it; a radius query only visits the cells overlapping the radius' bounding box and then filters exactly with the
+haversine distance. Deleting swaps the last slot into the hole, so the arrays stay dense.
+
+It is fed by the same calls as the Elasticsearch repository (index/remove from StayService) and rebuilt from the coordinates
+stored on the stay table at startup. Booked dates are not indexed here: SearchService rechecks every hit against the
+availability index, which is an in-memory lookup as well.*/
+public class EmbeddedLocationRepository implements CustomLocationRepository {
+
+    private static final double CELL_DEGREES = 0.1;           // about 11 km of latitude
+    private static final int LON_CELLS = (int) Math.round(360 / CELL_DEGREES);
+    private static final double KM_PER_DEGREE = Math.PI * GeoUtil.EARTH_RADIUS_KM / 180;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private long[] ids = new long[1024];
+    private double[] lats = new double[1024];
+    private double[] lons = new double[1024];
+    private int[] guestNumbers = new int[1024];
+    private int count;
+
+    private final Map<Long, Integer> slotsById = new HashMap<>();
+    private final Map<Long, int[]> cells = new HashMap<>();        // cell key -> slots, first element is the slot count
+
+    // replaces the whole index, e.g. from LocationRepositoryConfig at startup
+    public void rebuild(List<Location> locations) {
+        lock.writeLock().lock();
+        try {
+            count = 0;
+            slotsById.clear();
+            cells.clear();
+            for (Location location : locations) {
+                add(location);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void index(Location location) {
+        lock.writeLock().lock();
+        try {
+            delete(location.getId());
+            add(location);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void remove(Long id) {
+        lock.writeLock().lock();
+        try {
+            delete(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // collects the locations and swaps them in with rebuild() on publish
+    @Override
+    public LocationIndexRebuild startRebuild() {
+        List<Location> rebuilt = Collections.synchronizedList(new ArrayList<>());
+        return new LocationIndexRebuild() {
+            @Override
+            public String getName() {
+                return "embedded";
+            }
+
+            @Override
+            public void indexAll(List<Location> locations) {
+                rebuilt.addAll(locations);
+            }
+
+            @Override
+            public void publish() {
+                rebuild(rebuilt);
+            }
+
+            @Override
+            public void abort() {
+                rebuilt.clear();
+            }
+        };
+    }
+
+    @Override
+    public void indexAll(List<Location> locations) {
+        lock.writeLock().lock();
+        try {
+            for (Location location : locations) {
+                delete(location.getId());
+                add(location);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void removeAll(Collection<Long> ids) {
+        lock.writeLock().lock();
+        try {
+            for (Long id : ids) {
+                delete(id);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Location> searchByDistance(double lat, double lon, String distance) {
+        double distanceKm = GeoUtil.parseDistanceKm(distance);
+        List<Location> locations = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            forEachCell(lat, lon, distanceKm, cell -> {
+                for (int i = 1; i <= cell[0]; i++) {
+                    int slot = cell[i];
+                    if (GeoUtil.distanceKm(lat, lon, lats[slot], lons[slot]) <= distanceKm) {
+                        locations.add(new Location(ids[slot], new GeoPoint(lats[slot], lons[slot])).setGuestNumber(guestNumbers[slot]));
+                    }
+                }
+            });
+        } finally {
+            lock.readLock().unlock();
+        }
+        return locations;
+    }
+
+    // booked dates are left to the caller's availability recheck, see the class comment
+    @Override
+    public List<LocationHit> searchAvailable(double lat, double lon, String distance, int guestNumber, LocalDate checkinDate, LocalDate checkoutDate, LocationHit searchAfter, int size) {
+        double distanceKm = GeoUtil.parseDistanceKm(distance);
+        PriorityQueue<LocationHit> closest = new PriorityQueue<>(size + 1, Comparator.reverseOrder());
+        lock.readLock().lock();
+        try {
+            forEachCell(lat, lon, distanceKm, cell -> {
+                for (int i = 1; i <= cell[0]; i++) {
+                    int slot = cell[i];
+                    if (guestNumbers[slot] < guestNumber) {
+                        continue;
+                    }
+                    double hitDistance = GeoUtil.distanceKm(lat, lon, lats[slot], lons[slot]);
+                    if (hitDistance > distanceKm
+                            || (searchAfter != null && compare(hitDistance, ids[slot], searchAfter) <= 0)
+                            || (closest.size() == size && compare(hitDistance, ids[slot], closest.peek()) >= 0)) {
+                        continue;
+                    }
+                    closest.offer(new LocationHit(ids[slot], hitDistance));
+                    if (closest.size() > size) {
+                        closest.poll();
+                    }
+                }
+            });
+        } finally {
+            lock.readLock().unlock();
+        }
+        List<LocationHit> page = new ArrayList<>(closest);
+        Collections.sort(page);
+        return page;
+    }
+
+    @Override
+    public void updateBookedRanges(Map<Long, List<BookedRange>> bookedRanges) {
+        // nothing to do, see the class comment
+    }
+
+    // same order as LocationHit.compareTo, without creating a LocationHit for every candidate
+    private static int compare(double distance, long id, LocationHit other) {
+        int result = Double.compare(distance, other.getDistance());
+        return result != 0 ? result : Long.compare(id, other.getId());
+    }
+
+    // visits every non-empty grid cell that overlaps the bounding box of the circle around (lat, lon)
+    private void forEachCell(double lat, double lon, double distanceKm, Consumer<int[]> visitor) {
+        double latDelta = distanceKm / KM_PER_DEGREE;
+        int minLatCell = latCell(Math.max(-90, lat - latDelta));
+        int maxLatCell = latCell(Math.min(90, lat + latDelta));
+        double cosLat = Math.cos(Math.toRadians(Math.min(89.9, Math.abs(lat) + latDelta)));
+        double lonDelta = distanceKm / (KM_PER_DEGREE * cosLat);
+        int minLonCell;
+        int maxLonCell;
+        if (lonDelta >= 180) {
+            minLonCell = 0;
+            maxLonCell = LON_CELLS - 1;
+        } else {
+            minLonCell = (int) Math.floor((lon - lonDelta + 180) / CELL_DEGREES);
+            maxLonCell = (int) Math.floor((lon + lonDelta + 180) / CELL_DEGREES);
+        }
+        for (int latCell = minLatCell; latCell <= maxLatCell; latCell++) {
+            for (int lonCell = minLonCell; lonCell <= maxLonCell; lonCell++) {
+                int[] cell = cells.get(cellKey(latCell, Math.floorMod(lonCell, LON_CELLS)));    // wraps around the antimeridian
+                if (cell != null) {
+                    visitor.accept(cell);
+                }
+            }
+        }
+    }
+
+    private void add(Location location) {
+        if (count == ids.length) {
+            int capacity = count * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            lats = Arrays.copyOf(lats, capacity);
+            lons = Arrays.copyOf(lons, capacity);
+            guestNumbers = Arrays.copyOf(guestNumbers, capacity);
+        }
+        int slot = count++;
+        ids[slot] = location.getId();
+        lats[slot] = location.getGeoPoint().getLat();
+        lons[slot] = location.getGeoPoint().getLon();
+        guestNumbers[slot] = location.getGuestNumber();
+        slotsById.put(location.getId(), slot);
+        addToCell(cellKey(slot), slot);
+    }
+
+    private void delete(Long id) {
+        Integer slot = slotsById.remove(id);
+        if (slot == null) {
+            return;
+        }
+        removeFromCell(cellKey(slot), slot);
+        int last = --count;
+        if (slot != last) {
+            // move the last slot into the hole so the arrays stay dense
+            long lastCell = cellKey(last);
+            ids[slot] = ids[last];
+            lats[slot] = lats[last];
+            lons[slot] = lons[last];
+            guestNumbers[slot] = guestNumbers[last];
+            slotsById.put(ids[slot], slot);
+            int[] cell = cells.get(lastCell);
+            for (int i = 1; i <= cell[0]; i++) {
+                if (cell[i] == last) {
+                    cell[i] = slot;
+                    break;
+                }
+            }
+        }
+    }
+
+    private void addToCell(long key, int slot) {
+        int[] cell = cells.get(key);
+        if (cell == null) {
+            cell = new int[4];
+        } else if (cell[0] + 1 == cell.length) {
+            cell = Arrays.copyOf(cell, cell.length * 2);
+        }
+        cell[++cell[0]] = slot;
+        cells.put(key, cell);
+    }
+
+    private void removeFromCell(long key, int slot) {
+        int[] cell = cells.get(key);
+        for (int i = 1; i <= cell[0]; i++) {
+            if (cell[i] == slot) {
+                cell[i] = cell[cell[0]--];
+                break;
+            }
+        }
+        if (cell[0] == 0) {
+            cells.remove(key);
+        }
+    }
+
+    private long cellKey(int slot) {
+        return cellKey(latCell(lats[slot]), Math.floorMod((int) Math.floor((lons[slot] + 180) / CELL_DEGREES), LON_CELLS));
+    }
+
+    private static int latCell(double lat) {
+        return (int) Math.floor((lat + 90) / CELL_DEGREES);
+    }
+
+    private static long cellKey(int latCell, int lonCell) {
+        return ((long) latCell << 32) | lonCell;
+    }
+}
@@ -0,0 +1,9 @@
+package com.laioffer.staybooking.repository;
+
+import com.laioffer.staybooking.model.GeocodedAddress;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface GeocodedAddressRepository extends JpaRepository<GeocodedAddress, String> {
+}
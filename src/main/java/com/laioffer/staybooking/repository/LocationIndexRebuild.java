@@ -0,0 +1,21 @@
+package com.laioffer.staybooking.repository;
+
+import com.laioffer.staybooking.model.Location;
+
+import java.util.List;
+
+// a full rebuild of the location index in progress, see CustomLocationRepository.startRebuild. Searches keep using the
+// live index until publish() makes the rebuilt one live in a single step
+public interface LocationIndexRebuild {
+
+    // name of the index being built
+    String getName();
+
+    // may be called from several threads at once
+    void indexAll(List<Location> locations);
+
+    void publish();
+
+    // drops what was built so far; the live index is left as it is
+    void abort();
+}
@@ -0,0 +1,17 @@
+package com.laioffer.staybooking.repository;
+
+import com.laioffer.staybooking.model.OutboxEvent;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface OutboxEventRepository extends JpaRepository<OutboxEvent, Long> {
+
+    // the oldest pending events, a range scan of the primary key
+    @Query(value = "SELECT e FROM OutboxEvent e ORDER BY e.id")
+    List<OutboxEvent> findOldest(Pageable pageable);
+}
@@ -2,9 +2,12 @@ package com.laioffer.staybooking.repository;
 
 
 import com.laioffer.staybooking.model.Reservation;
+import com.laioffer.staybooking.model.ReservationSummary;
 import com.laioffer.staybooking.model.Stay;
 import com.laioffer.staybooking.model.User;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
 
@@ -35,4 +38,27 @@ public interface ReservationRepository extends JpaRepository<Reservation, Long>
 
 
     List<Reservation> findByStayAndCheckoutDateAfter(Stay stay, LocalDate date);
+
+    // keyset pagination of listings: the rows after (checkinDate, id) in the listing order, with checkout in (checkoutAfter, checkoutUntil].
+    // Pass PageRequest.of(0, size) as pageable; there is no count query, and the (owner, checkin_date, id) indexes on
+    // reservation let MySQL seek straight to the cursor however long the history is.
+    @Query(value = "SELECT new com.laioffer.staybooking.model.ReservationSummary(r.id, r.checkinDate, r.checkoutDate, s.id, s.name, r.guest.username) "
+            + "FROM Reservation r JOIN r.stay s WHERE r.guest.username = ?1 AND r.checkoutDate > ?2 AND r.checkoutDate <= ?3 "
+            + "AND (r.checkinDate > ?4 OR (r.checkinDate = ?4 AND r.id > ?5)) ORDER BY r.checkinDate ASC, r.id ASC")
+    List<ReservationSummary> findGuestPageAscending(String username, LocalDate checkoutAfter, LocalDate checkoutUntil, LocalDate checkinDate, Long id, Pageable pageable);
+
+    @Query(value = "SELECT new com.laioffer.staybooking.model.ReservationSummary(r.id, r.checkinDate, r.checkoutDate, s.id, s.name, r.guest.username) "
+            + "FROM Reservation r JOIN r.stay s WHERE r.guest.username = ?1 AND r.checkoutDate > ?2 AND r.checkoutDate <= ?3 "
+            + "AND (r.checkinDate < ?4 OR (r.checkinDate = ?4 AND r.id < ?5)) ORDER BY r.checkinDate DESC, r.id DESC")
+    List<ReservationSummary> findGuestPageDescending(String username, LocalDate checkoutAfter, LocalDate checkoutUntil, LocalDate checkinDate, Long id, Pageable pageable);
+
+    @Query(value = "SELECT new com.laioffer.staybooking.model.ReservationSummary(r.id, r.checkinDate, r.checkoutDate, s.id, s.name, r.guest.username) "
+            + "FROM Reservation r JOIN r.stay s WHERE s.id = ?1 AND r.checkoutDate > ?2 AND r.checkoutDate <= ?3 "
+            + "AND (r.checkinDate > ?4 OR (r.checkinDate = ?4 AND r.id > ?5)) ORDER BY r.checkinDate ASC, r.id ASC")
+    List<ReservationSummary> findStayPageAscending(Long stayId, LocalDate checkoutAfter, LocalDate checkoutUntil, LocalDate checkinDate, Long id, Pageable pageable);
+
+    @Query(value = "SELECT new com.laioffer.staybooking.model.ReservationSummary(r.id, r.checkinDate, r.checkoutDate, s.id, s.name, r.guest.username) "
+            + "FROM Reservation r JOIN r.stay s WHERE s.id = ?1 AND r.checkoutDate > ?2 AND r.checkoutDate <= ?3 "
+            + "AND (r.checkinDate < ?4 OR (r.checkinDate = ?4 AND r.id < ?5)) ORDER BY r.checkinDate DESC, r.id DESC")
+    List<ReservationSummary> findStayPageDescending(Long stayId, LocalDate checkoutAfter, LocalDate checkoutUntil, LocalDate checkinDate, Long id, Pageable pageable);
 }
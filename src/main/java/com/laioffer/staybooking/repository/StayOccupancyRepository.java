@@ -0,0 +1,30 @@
+package com.laioffer.staybooking.repository;
+
+import com.laioffer.staybooking.model.StayOccupancy;
+import com.laioffer.staybooking.model.StayOccupancyKey;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface StayOccupancyRepository extends JpaRepository<StayOccupancy, StayOccupancyKey> {
+
+    // adds nights (negative on cancellation) to the tally in one statement, creating the row on the first booking of the month.
+    // The row lock taken by the upsert serializes concurrent bookings of the same stay and month, so no increment is lost
+    @Modifying
+    @Query(value = "INSERT INTO stay_occupancy (stay_id, month, booked_nights) VALUES (?1, ?2, ?3) "
+            + "ON DUPLICATE KEY UPDATE booked_nights = booked_nights + VALUES(booked_nights)", nativeQuery = true)
+    int addBookedNights(Long stayId, LocalDate month, int nights);
+
+    @Query(value = "SELECT o FROM StayOccupancy o WHERE o.id.stay_id IN ?1 AND o.id.month BETWEEN ?2 AND ?3")
+    List<StayOccupancy> findByStayIdsAndMonthBetween(Collection<Long> stayIds, LocalDate fromMonth, LocalDate toMonth);
+
+    @Modifying
+    @Query(value = "DELETE FROM StayOccupancy o WHERE o.id.stay_id = ?1")
+    int deleteByStayId(Long stayId);
+}
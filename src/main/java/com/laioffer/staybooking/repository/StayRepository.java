@@ -2,17 +2,98 @@ package com.laioffer.staybooking.repository;
 
 
 import com.laioffer.staybooking.model.Stay;
+import com.laioffer.staybooking.model.StayIndexState;
+import com.laioffer.staybooking.model.StayIndexStatus;
+import com.laioffer.staybooking.model.StaySummary;
 import com.laioffer.staybooking.model.User;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 
+import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
 
 @Repository
 public interface StayRepository extends JpaRepository<Stay, Long> {
     // save() and delete() 都是自带的，不用单独写。
     List<Stay> findByHost(User user);        //为什么不直接用findById() 一定要加host? Id也是unique id呀。因为加完host，更安全。Id找的话，什么信息都能找到，但是用host找的话，一定要under这个host才能找到。more gatekeeper to keep information correct
+    @EntityGraph(attributePaths = "images")     // the detail page shows every image, so fetch them in the same query
     Stay findByIdAndHost(Long id, User host);
     List<Stay> findByIdInAndGuestNumberGreaterThanEqual(List<Long> ids, int guestNumber);
+
+    // what an in-process location index needs, without loading whole Stay entities (and their eager images):
+    // each row is {id, latitude, longitude, guestNumber}
+    @Query(value = "SELECT s.id, s.latitude, s.longitude, s.guestNumber FROM Stay s WHERE s.latitude IS NOT NULL AND s.longitude IS NOT NULL")
+    List<Object[]> findAllCoordinates();
+
+    // same rows for some stays, e.g. to reindex the stays named by outbox events
+    @Query(value = "SELECT s.id, s.latitude, s.longitude, s.guestNumber FROM Stay s WHERE s.id IN ?1 AND s.latitude IS NOT NULL AND s.longitude IS NOT NULL")
+    List<Object[]> findCoordinatesByIdIn(Collection<Long> ids);
+
+    // keyset pages of every stay for a full reindex, see LocationReindexService: {id, latitude, longitude, guestNumber, address, indexStatus}
+    @Query(value = "SELECT s.id, s.latitude, s.longitude, s.guestNumber, s.address, s.indexStatus FROM Stay s WHERE s.id > ?1 ORDER BY s.id")
+    List<Object[]> findIndexRowsAfter(Long afterId, Pageable pageable);
+
+    // stays indexed before coordinates were stored on the stay get them the first time they are geocoded again
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE Stay s SET s.latitude = ?2, s.longitude = ?3 WHERE s.id = ?1 AND s.latitude IS NULL")
+    int setMissingCoordinates(Long id, Double latitude, Double longitude);
+
+    // list endpoints: one row per stay with its first image (images have no position, so the smallest url stands in for "first")
+    @Query(value = "SELECT new com.laioffer.staybooking.model.StaySummary(s.id, s.name, s.description, s.address, s.guestNumber, MIN(i.url)) "
+            + "FROM Stay s LEFT JOIN s.images i WHERE s.id IN ?1 GROUP BY s.id, s.name, s.description, s.address, s.guestNumber")
+    List<StaySummary> findSummariesByIdIn(Collection<Long> ids);
+
+    @Query(value = "SELECT new com.laioffer.staybooking.model.StaySummary(s.id, s.name, s.description, s.address, s.guestNumber, MIN(i.url)) "
+            + "FROM Stay s LEFT JOIN s.images i WHERE s.host = ?1 GROUP BY s.id, s.name, s.description, s.address, s.guestNumber")
+    List<StaySummary> findSummariesByHost(User host);
+
+    @Query(value = "SELECT s.id FROM Stay s WHERE s.host = ?1 ORDER BY s.id")
+    List<Long> findIdsByHost(User host);
+
+    @Query(value = "SELECT s.id FROM Stay s ORDER BY s.id")
+    List<Long> findAllIds();
+
+    // geocoding queue of StayGeocodingService: stays still to be geocoded whose next attempt is due, as {id, address, geocodeAttempts}
+    @Query(value = "SELECT s.id, s.address, s.geocodeAttempts FROM Stay s WHERE s.indexStatus = ?1 "
+            + "AND (s.nextGeocodeAt IS NULL OR s.nextGeocodeAt <= ?2) ORDER BY s.id")
+    List<Object[]> findGeocodeDue(StayIndexStatus status, Instant now, Pageable pageable);
+
+    // the status guard makes every transition a no-op for a stay that was deleted or moved on meanwhile
+    @Modifying
+    @Query(value = "UPDATE Stay s SET s.latitude = ?2, s.longitude = ?3, s.indexStatus = ?5 WHERE s.id = ?1 AND s.indexStatus = ?4")
+    int setCoordinatesIfStatus(Long id, Double latitude, Double longitude, StayIndexStatus expected, StayIndexStatus status);
+
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE Stay s SET s.geocodeAttempts = ?3, s.nextGeocodeAt = ?4, s.indexStatus = ?5 WHERE s.id = ?1 AND s.indexStatus = ?2")
+    int recordGeocodeAttemptIfStatus(Long id, StayIndexStatus expected, int geocodeAttempts, Instant nextGeocodeAt, StayIndexStatus status);
+
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE Stay s SET s.indexStatus = ?3 WHERE s.id IN ?1 AND s.indexStatus = ?2")
+    int setIndexStatusIfStatus(Collection<Long> ids, StayIndexStatus expected, StayIndexStatus status);
+
+    @Query(value = "SELECT new com.laioffer.staybooking.model.StayIndexState(s.id, s.indexStatus, s.geocodeAttempts) FROM Stay s WHERE s.id = ?1 AND s.host = ?2")
+    StayIndexState findIndexStateByIdAndHost(Long id, User host);
+
+    // row lock on the stay until the surrounding transaction ends, for interval storage's overlap check.
+    // Native, so that only the stay row is locked and not the rows of eagerly joined associations such as its host
+    @Query(value = "SELECT id FROM stay WHERE id = ?1 FOR UPDATE", nativeQuery = true)
+    Long lockById(Long id);
+
+    // null if there is no such stay
+    @Query(value = "SELECT s.calendarVersion FROM Stay s WHERE s.id = ?1")
+    Long findCalendarVersion(Long id);
+
+    @Modifying
+    @Query(value = "UPDATE Stay s SET s.calendarVersion = s.calendarVersion + 1 WHERE s.id = ?1")
+    int incrementCalendarVersion(Long id);
 }
\ No newline at end of file
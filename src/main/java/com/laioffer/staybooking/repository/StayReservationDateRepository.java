@@ -4,6 +4,7 @@ package com.laioffer.staybooking.repository;
 import com.laioffer.staybooking.model.StayReservedDate;
 import com.laioffer.staybooking.model.StayReservedDateKey;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.stereotype.Repository;
 import org.springframework.data.jpa.repository.Query;
 
@@ -23,4 +24,35 @@ public interface StayReservationDateRepository extends JpaRepository<StayReserve
     @Query(value = "SELECT srd.id.stay_id FROM StayReservedDate srd WHERE srd.id.stay_id IN ?1 AND srd.id.date BETWEEN ?2 AND ?3 GROUP BY srd.id.stay_id")   //Hibernate
     // Query(value = "SELECT stay_id FROM stay_reserved_date WHERE id IN (:stayIds) date BETWEEN ?1 AND ?2", nativeQuery = true)        // 也可以写成这样。
     Set<Long> findByIdInAndDateBetween(List<Long> stayIds, LocalDate startDate, LocalDate endDate);
+
+    // only the composite keys are needed to build the in-memory availability index, so skip loading the Stay side of each row
+    @Query(value = "SELECT srd.id FROM StayReservedDate srd WHERE srd.id.date >= ?1")
+    List<StayReservedDateKey> findKeysByDateFrom(LocalDate startDate);
+
+    // availability calendar: a range scan of the (stay_id, date) primary key that needs no other column
+    @Query(value = "SELECT srd.id.date FROM StayReservedDate srd WHERE srd.id.stay_id = ?1 AND srd.id.date BETWEEN ?2 AND ?3 ORDER BY srd.id.date")
+    List<LocalDate> findDatesByStayIdAndDateBetween(Long stayId, LocalDate startDate, LocalDate endDate);
+
+    // migration to interval storage, see IntervalReservedDateStore
+    @Query(value = "SELECT DISTINCT srd.id.stay_id FROM StayReservedDate srd")
+    List<Long> findStayIds();
+
+    @Query(value = "SELECT srd.id.date FROM StayReservedDate srd WHERE srd.id.stay_id = ?1 ORDER BY srd.id.date")
+    List<LocalDate> findDatesByStayId(Long stayId);
+
+    // bulk deletes: one DELETE on the (stay_id, date) primary key, however many nights, without loading the rows first.
+    // They bypass the persistence context, so callers must not hold StayReservedDate entities of the same stay.
+    @Modifying
+    @Query(value = "DELETE FROM StayReservedDate srd WHERE srd.id.stay_id = ?1 AND srd.id.date >= ?2 AND srd.id.date < ?3")
+    int deleteByStayIdAndDateRange(Long stayId, LocalDate checkinDate, LocalDate checkoutDate);
+
+    @Modifying
+    @Query(value = "DELETE FROM StayReservedDate srd WHERE srd.id.stay_id = ?1")
+    int deleteByStayId(Long stayId);
+
+    // second half of an archive batch: the same rows ArchivedStayReservedDateRepository.copyBatch just copied, in the same
+    // (date, stay_id) order of the date index. Native, because JPQL has no LIMIT on DELETE
+    @Modifying
+    @Query(value = "DELETE FROM stay_reserved_date WHERE date < ?1 ORDER BY date, stay_id LIMIT ?2", nativeQuery = true)
+    int deleteBatchBefore(LocalDate date, int limit);
 }
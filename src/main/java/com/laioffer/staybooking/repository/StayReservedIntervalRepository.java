@@ -0,0 +1,39 @@
+package com.laioffer.staybooking.repository;
+
+import com.laioffer.staybooking.model.StayReservedInterval;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import javax.persistence.LockModeType;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+
+// [checkin, checkout) intervals overlap [a, b) exactly when checkin < b and checkout > a
+@Repository
+public interface StayReservedIntervalRepository extends JpaRepository<StayReservedInterval, Long> {
+
+    @Query(value = "SELECT sri FROM StayReservedInterval sri WHERE sri.stayId = ?1 AND sri.checkinDate < ?3 AND sri.checkoutDate > ?2 ORDER BY sri.checkinDate")
+    List<StayReservedInterval> findOverlapping(Long stayId, LocalDate checkinDate, LocalDate checkoutDate);
+
+    // for cancellation, which rewrites the intervals it reads: a locking read sees the latest committed rows even when the
+    // transaction already read something before (MySQL's REPEATABLE READ snapshot would otherwise hide a concurrent cancellation)
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query(value = "SELECT sri FROM StayReservedInterval sri WHERE sri.stayId = ?1 AND sri.checkinDate < ?3 AND sri.checkoutDate > ?2 ORDER BY sri.checkinDate")
+    List<StayReservedInterval> findOverlappingForUpdate(Long stayId, LocalDate checkinDate, LocalDate checkoutDate);
+
+    @Query(value = "SELECT COUNT(sri) FROM StayReservedInterval sri WHERE sri.stayId = ?1 AND sri.checkinDate < ?3 AND sri.checkoutDate > ?2")
+    long countOverlapping(Long stayId, LocalDate checkinDate, LocalDate checkoutDate);
+
+    @Query(value = "SELECT DISTINCT sri.stayId FROM StayReservedInterval sri WHERE sri.stayId IN ?1 AND sri.checkinDate < ?3 AND sri.checkoutDate > ?2")
+    List<Long> findStayIdsOverlapping(Collection<Long> stayIds, LocalDate checkinDate, LocalDate checkoutDate);
+
+    List<StayReservedInterval> findByCheckoutDateAfter(LocalDate date);
+
+    @Modifying
+    @Query(value = "DELETE FROM StayReservedInterval sri WHERE sri.stayId = ?1")
+    int deleteByStayId(Long stayId);
+}
@@ -0,0 +1,100 @@
+package com.laioffer.staybooking.service;
+
+import com.laioffer.staybooking.exception.StayNotExistException;
+import com.laioffer.staybooking.model.AvailabilityCalendar;
+import com.laioffer.staybooking.model.BookedRange;
+import com.laioffer.staybooking.repository.StayRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*Serves the per-stay availability calendar (/stays/{stayId}/availability) straight from the ReservedDateStore: one range query
+on the stay's index (the (stay_id, date) primary key with night storage), turned into runs of booked nights.
+
+Each stay has a version, stay.calendar_version, that ReservationService bumps in every transaction that adds or removes its nights.
+The version and the resolved from and to make up the calendar's ETag, so a client that already has the current calendar of that
+range gets a 304 after a single primary key lookup, and computed calendars are kept in a small LRU cache keyed by (stay, from, to)
+until the version moves on. The version is persisted, so ETags stay valid across restarts and match on every instance.*/
+@Service
+public class AvailabilityCalendarService {
+
+    private final StayRepository stayRepository;
+    private final ReservedDateStore reservedDateStore;
+
+    @Value("${availability.calendar.cache-entries:10000}")
+    private int maxEntries;
+
+    // access ordered, so the eldest entry is the least recently used one. Guarded by itself.
+    private final LinkedHashMap<String, Cached> cache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Cached> eldest) {
+            return size() > maxEntries;
+        }
+    };
+
+    public AvailabilityCalendarService(StayRepository stayRepository, ReservedDateStore reservedDateStore) {
+        this.stayRepository = stayRepository;
+        this.reservedDateStore = reservedDateStore;
+    }
+
+    // from and to are the resolved range: with a defaulted from the same URL asks for another window tomorrow
+    public String etag(Long stayId, LocalDate from, LocalDate to) throws StayNotExistException {
+        return version(stayId) + "." + from + "." + to;
+    }
+
+    public AvailabilityCalendar calendar(Long stayId, LocalDate from, LocalDate to) throws StayNotExistException {
+        String key = stayId + "/" + from + "/" + to;
+        long version = version(stayId);     // read before querying, so a change during the query is not masked
+        synchronized (cache) {
+            Cached cached = cache.get(key);
+            if (cached != null && cached.version == version) {
+                return cached.calendar;
+            }
+        }
+        AvailabilityCalendar calendar = new AvailabilityCalendar(from, to,
+                encode(from, reservedDateStore.bookedRanges(stayId, from, to)));
+        synchronized (cache) {
+            cache.put(key, new Cached(version, calendar));
+        }
+        return calendar;
+    }
+
+    // call from the transaction that adds or removes booked nights of the stay, before writing them: the UPDATE takes the stay
+    // row's write lock, which the foreign key checks of the writes would otherwise first share with a concurrent booking of the
+    // same stay and then both try to upgrade, a deadlock
+    public void invalidate(Long stayId) {
+        stayRepository.incrementCalendarVersion(stayId);
+    }
+
+    private long version(Long stayId) throws StayNotExistException {
+        Long version = stayRepository.findCalendarVersion(stayId);
+        if (version == null) {
+            throw new StayNotExistException("Stay doesn't exist");
+        }
+        return version;
+    }
+
+    private static int[] encode(LocalDate from, List<BookedRange> ranges) {
+        int[] runs = new int[ranges.size() * 2];
+        for (int i = 0; i < ranges.size(); i++) {
+            BookedRange range = ranges.get(i);
+            runs[2 * i] = (int) (range.getGte().toEpochDay() - from.toEpochDay());
+            runs[2 * i + 1] = (int) (range.getLt().toEpochDay() - range.getGte().toEpochDay());
+        }
+        return runs;
+    }
+
+    private static class Cached {
+        final long version;
+        final AvailabilityCalendar calendar;
+
+        Cached(long version, AvailabilityCalendar calendar) {
+            this.version = version;
+            this.calendar = calendar;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.laioffer.staybooking.service;
+
+import com.laioffer.staybooking.model.BookedRange;
+import com.laioffer.staybooking.util.AvailabilityBitmap;
+import com.laioffer.staybooking.util.BookedNights;
+import com.laioffer.staybooking.util.IntervalSet;
+import com.laioffer.staybooking.util.TransactionUtil;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/*In-memory availability index: the booked nights of every stay, keyed by epoch day. With night storage each stay gets an
+AvailabilityBitmap; with interval storage (reservation.storage=intervals) an IntervalSet, whose size follows the number of bookings.
+It is loaded once from the ReservedDateStore at startup (future nights only, past nights can never be searched or booked)
+and kept current by ReservationService. Search and the reservation collision check ask it "is any night in
+[checkin, checkout) taken" instead of sending a findByIdInAndDateBetween query to MySQL.
+
+The store stays the source of truth; updates are applied only after the surrounding transaction commits,
+so a rolled back reservation never shows up as booked.*/
+@Component
+public class AvailabilityIndex {
+
+    private final ReservedDateStore reservedDateStore;
+    private final Supplier<BookedNights> factory;
+    private final Map<Long, BookedNights> nights = new ConcurrentHashMap<>();
+
+    public AvailabilityIndex(ReservedDateStore reservedDateStore, @Value("${reservation.storage:nights}") String storage) {
+        this.reservedDateStore = reservedDateStore;
+        this.factory = "intervals".equals(storage) ? IntervalSet::new : AvailabilityBitmap::new;
+    }
+
+    @PostConstruct
+    public void load() {
+        reservedDateStore.forEachBookedRun(LocalDate.now(), (stayId, checkinDate, checkoutDate) ->
+                nights.computeIfAbsent(stayId, id -> factory.get()).set(checkinDate.toEpochDay(), checkoutDate.toEpochDay()));
+    }
+
+    // checkout is exclusive: a stay booked until the 10th can be checked in on the 10th
+    public boolean isAvailable(Long stayId, LocalDate checkinDate, LocalDate checkoutDate) {
+        BookedNights booked = nights.get(stayId);
+        return booked == null || !booked.anySet(checkinDate.toEpochDay(), checkoutDate.toEpochDay());
+    }
+
+    // earliest checkin date in [windowStart, windowEnd) for nights consecutive free nights that end by windowEnd, or null
+    public LocalDate earliestFreeRun(Long stayId, LocalDate windowStart, LocalDate windowEnd, int nights) {
+        long from = windowStart.toEpochDay();
+        long to = windowEnd.toEpochDay();
+        BookedNights booked = this.nights.get(stayId);
+        long start = booked == null ? (from + nights <= to ? from : -1) : booked.firstClearRun(from, to, nights);
+        return start < 0 ? null : LocalDate.ofEpochDay(start);
+    }
+
+    public void reserve(Long stayId, LocalDate checkinDate, LocalDate checkoutDate) {
+        TransactionUtil.afterCommit(() -> nights.computeIfAbsent(stayId, id -> factory.get())
+                .set(checkinDate.toEpochDay(), checkoutDate.toEpochDay()));
+    }
+
+    public void release(Long stayId, LocalDate checkinDate, LocalDate checkoutDate) {
+        TransactionUtil.afterCommit(() -> {
+            BookedNights booked = nights.get(stayId);
+            if (booked != null) {
+                booked.clear(checkinDate.toEpochDay(), checkoutDate.toEpochDay());
+            }
+        });
+    }
+
+    // booked nights from fromDate on, merged into [start, end) ranges
+    public List<BookedRange> bookedRanges(Long stayId, LocalDate fromDate) {
+        List<BookedRange> ranges = new ArrayList<>();
+        BookedNights booked = nights.get(stayId);
+        if (booked != null) {
+            booked.forEachRun(fromDate.toEpochDay(), (from, to) -> ranges.add(new BookedRange(LocalDate.ofEpochDay(from), LocalDate.ofEpochDay(to))));
+        }
+        return ranges;
+    }
+
+    public void remove(Long stayId) {
+        TransactionUtil.afterCommit(() -> nights.remove(stayId));
+    }
+}
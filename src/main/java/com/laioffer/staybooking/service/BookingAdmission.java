@@ -0,0 +1,170 @@
+package com.laioffer.staybooking.service;
+
+import com.laioffer.staybooking.exception.ReservationCollisionException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*In-process admission control for bookings, run before ReservationService opens a transaction.
+
+A booking first claims its [checkin, checkout) on the stay: the claim is granted only if the availability index shows the nights
+free and no other booking still in flight holds an overlapping claim; otherwise ReservationCollisionException is thrown right away,
+without touching MySQL. The claim is held until the booking's transaction has finished (and, on commit, the availability index
+has been updated), so two guests racing for the same nights can no longer both reach the INSERT.
+
+Stays are spread over a fixed number of lock stripes, so bookings of unrelated stays almost never wait on each other and a lock
+is only held for the few map operations of a claim, never across I/O. ReservationHoldService keeps claims for minutes as holds;
+search hides claimed nights too (claimedUntil). This covers a single instance; with several instances
+the (stay_id, date) primary key still rejects the loser, which ReservationService maps to the same exception.*/
+@Component
+public class BookingAdmission {
+
+    private final AvailabilityIndex availabilityIndex;
+    private final Stripe[] stripes;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final Counter admitted;
+    private final Counter rejectedBooked;
+    private final Counter rejectedInFlight;
+    private final Counter contended;
+    private final Timer lockWait;
+
+    public BookingAdmission(AvailabilityIndex availabilityIndex, MeterRegistry meterRegistry,
+                            @Value("${reservation.admission.stripes:256}") int stripeCount) {
+        this.availabilityIndex = availabilityIndex;
+        this.stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new Stripe();
+        }
+        this.admitted = meterRegistry.counter("reservation.admission", "result", "admitted");
+        this.rejectedBooked = meterRegistry.counter("reservation.admission", "result", "booked");
+        this.rejectedInFlight = meterRegistry.counter("reservation.admission", "result", "in_flight");
+        this.contended = meterRegistry.counter("reservation.admission.contended");       // had to wait for a stripe lock
+        this.lockWait = meterRegistry.timer("reservation.admission.lock.wait");
+        Gauge.builder("reservation.admission.in.flight", inFlight, AtomicInteger::get).register(meterRegistry);
+    }
+
+    // claims the nights or throws ReservationCollisionException. The returned claim must be released (see Claim.release)
+    public Claim admit(Long stayId, LocalDate checkinDate, LocalDate checkoutDate) throws ReservationCollisionException {
+        Stripe stripe = stripeOf(stayId);
+        Claim claim = new Claim(stripe, stayId, checkinDate.toEpochDay(), checkoutDate.toEpochDay());
+        lock(stripe.lock);
+        try {
+            List<Claim> claims = stripe.claims.get(stayId);
+            if (claims != null) {
+                for (Claim other : claims) {
+                    if (other.overlaps(claim)) {
+                        rejectedInFlight.increment();
+                        throw new ReservationCollisionException("Duplicate reservation");
+                    }
+                }
+            }
+            // under the stripe lock, so no booking of this stay can commit between this check and registering the claim
+            if (!availabilityIndex.isAvailable(stayId, checkinDate, checkoutDate)) {
+                rejectedBooked.increment();
+                throw new ReservationCollisionException("Duplicate reservation");
+            }
+            stripe.claims.computeIfAbsent(stayId, id -> new ArrayList<>(2)).add(claim);
+        } finally {
+            stripe.lock.unlock();
+        }
+        inFlight.incrementAndGet();
+        admitted.increment();
+        return claim;
+    }
+
+    // end (epoch day, exclusive) of the latest claim overlapping [checkinDate, checkoutDate) on the stay, or -1 if there is none
+    public long claimedUntil(Long stayId, LocalDate checkinDate, LocalDate checkoutDate) {
+        Stripe stripe = stripeOf(stayId);
+        long from = checkinDate.toEpochDay();
+        long to = checkoutDate.toEpochDay();
+        long until = -1;
+        lock(stripe.lock);
+        try {
+            List<Claim> claims = stripe.claims.get(stayId);
+            if (claims != null) {
+                for (Claim claim : claims) {
+                    if (claim.fromDay < to && from < claim.toDay) {
+                        until = Math.max(until, claim.toDay);
+                    }
+                }
+            }
+        } finally {
+            stripe.lock.unlock();
+        }
+        return until;
+    }
+
+    public boolean isClaimed(Long stayId, LocalDate checkinDate, LocalDate checkoutDate) {
+        return claimedUntil(stayId, checkinDate, checkoutDate) >= 0;
+    }
+
+    private Stripe stripeOf(Long stayId) {
+        return stripes[Math.floorMod(Long.hashCode(stayId * 0x9E3779B97F4A7C15L), stripes.length)];
+    }
+
+    private void lock(ReentrantLock lock) {
+        if (lock.tryLock()) {
+            return;
+        }
+        contended.increment();
+        long start = System.nanoTime();
+        lock.lock();
+        lockWait.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    private static class Stripe {
+        final ReentrantLock lock = new ReentrantLock();
+        final Map<Long, List<Claim>> claims = new HashMap<>();     // guarded by lock
+    }
+
+    public class Claim {
+        private final Stripe stripe;
+        private final Long stayId;
+        private final long fromDay;
+        private final long toDay;
+        private boolean released;
+
+        private Claim(Stripe stripe, Long stayId, long fromDay, long toDay) {
+            this.stripe = stripe;
+            this.stayId = stayId;
+            this.fromDay = fromDay;
+            this.toDay = toDay;
+        }
+
+        boolean overlaps(Claim other) {
+            return fromDay < other.toDay && other.fromDay < toDay;
+        }
+
+        // call once the booking's transaction has committed or rolled back. Releasing twice is harmless
+        public void release() {
+            lock(stripe.lock);
+            try {
+                if (released) {
+                    return;
+                }
+                released = true;
+                List<Claim> claims = stripe.claims.get(stayId);
+                claims.remove(this);
+                if (claims.isEmpty()) {
+                    stripe.claims.remove(stayId);
+                }
+            } finally {
+                stripe.lock.unlock();
+            }
+            inFlight.decrementAndGet();
+        }
+    }
+}
@@ -7,7 +7,9 @@ import com.google.maps.errors.ApiException;
 import com.google.maps.model.GeocodingResult;
 import com.laioffer.staybooking.exception.GeoCodingException;
 import com.laioffer.staybooking.exception.InvalidStayAddressException;
+import com.laioffer.staybooking.model.GeocodedAddress;
 import com.laioffer.staybooking.model.Location;
+import com.laioffer.staybooking.util.AddressUtil;
 import org.springframework.data.elasticsearch.core.geo.GeoPoint;
 import org.springframework.stereotype.Service;
 
@@ -18,17 +20,30 @@ import java.io.IOException;
 public class GeoCodingService {
 
     private final GeoApiContext context;
+    private final GeocodingCache geocodingCache;
 
-    public GeoCodingService(GeoApiContext context) {
+    public GeoCodingService(GeoApiContext context, GeocodingCache geocodingCache) {
         this.context = context;
+        this.geocodingCache = geocodingCache;
     }
 
+    // answers repeated addresses (same building, re-added stays) from GeocodingCache, including known partial matches
     public Location getLatLng(Long id, String address) {
+        String normalized = AddressUtil.normalize(address);
+        GeocodedAddress cached = geocodingCache.get(normalized);
+        if (cached != null) {
+            if (!cached.isMatched()) {
+                throw new InvalidStayAddressException("Failed to find stay address");
+            }
+            return new Location(id, new GeoPoint(cached.getLatitude(), cached.getLongitude()));
+        }
         try {
             GeocodingResult result = GeocodingApi.geocode(context, address).await()[0];  // await()执行的意思【0】的意思是取match最高的第一个结果
             if (result.partialMatch) {      // 只做exact match。partial match的话还是invalid
+                geocodingCache.put(normalized, false, null, null);
                 throw new InvalidStayAddressException("Failed to find stay address");
             }
+            geocodingCache.put(normalized, true, result.geometry.location.lat, result.geometry.location.lng);
             return new Location(id, new GeoPoint(result.geometry.location.lat, result.geometry.location.lng));   // return 一个 Location object。这个object就存在Elastic Search的database里
         } catch (IOException | ApiException | InterruptedException e) {
             e.printStackTrace();
@@ -0,0 +1,282 @@
+package com.laioffer.staybooking.service;
+
+import com.laioffer.staybooking.model.Location;
+import com.laioffer.staybooking.model.LocationHit;
+import com.laioffer.staybooking.repository.CustomLocationRepository;
+import com.laioffer.staybooking.util.GeoUtil;
+import com.laioffer.staybooking.util.SingleFlight;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/*A cache of geo lookups in front of LocationRepository.searchByDistance. Guests in the same city search from almost the same
+coordinates, so requests are quantized to the geohash cell that contains them: one entry per (cell, distance) holds every stay
+within distance of any point of the cell (id, coordinates and capacity in primitive arrays). A request is then answered in the JVM
+by computing the exact distance from its own coordinates, filtering capacity and the availability index and picking the next page,
+without going to Elasticsearch.
+
+Distances are rounded up to one of search.geo-cache.distance-buckets-km, so arbitrary distance values share a few entries.
+A distance above search.geo-cache.max-distance-km is never cached: it goes to LocationRepository.searchAvailable, whose memory
+is bounded by the page size, instead of loading a whole region onto the heap. Concurrent misses on one entry load it once.
+
+Entries expire after a TTL and the cache is bounded both by number of entries and by the total number of cached stays,
+evicting the least recently used entry first. StayService invalidates exactly the entries whose area contains an added or
+deleted stay. Hits, misses, evictions and invalidations are published as Micrometer counters so the cache can be sized.*/
+@Component
+public class GeoSearchCache {
+
+    @Value("${search.geo-cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${search.geo-cache.precision:6}")      // geohash characters, 6 is a cell of about 1.2 km x 0.6 km
+    private int precision;
+
+    @Value("${search.geo-cache.ttl-seconds:300}")
+    private long ttlSeconds;
+
+    @Value("${search.geo-cache.max-entries:10000}")
+    private int maxEntries;
+
+    @Value("${search.geo-cache.max-candidates:1000000}")
+    private long maxCandidates;
+
+    @Value("${search.geo-cache.max-distance-km:100}")
+    private double maxDistanceKm;
+
+    @Value("${search.geo-cache.distance-buckets-km:1,2,5,10,20,50}")      // ascending; max-distance-km is the last bucket
+    private double[] distanceBucketsKm;
+
+    @Value("${availability.source:index}")     // with database, SearchService checks dates itself, see there
+    private String availabilitySource;
+
+    private final CustomLocationRepository locationRepository;
+    private final AvailabilityIndex availabilityIndex;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter bypasses;
+    private final Counter evictions;
+    private final Counter invalidations;
+
+    // access ordered, so iteration starts at the least recently used entry. Guarded by this.
+    private final Map<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long cachedCandidates;
+    private long generation;              // bumped by every invalidation, see load()
+    private final SingleFlight<String, Entry> loads = new SingleFlight<>();
+
+    public GeoSearchCache(CustomLocationRepository locationRepository, AvailabilityIndex availabilityIndex, MeterRegistry meterRegistry) {
+        this.locationRepository = locationRepository;
+        this.availabilityIndex = availabilityIndex;
+        this.hits = meterRegistry.counter("search.geo.cache.requests", "result", "hit");
+        this.misses = meterRegistry.counter("search.geo.cache.requests", "result", "miss");
+        this.bypasses = meterRegistry.counter("search.geo.cache.requests", "result", "bypass");
+        this.evictions = meterRegistry.counter("search.geo.cache.evictions");
+        this.invalidations = meterRegistry.counter("search.geo.cache.invalidations");
+        Gauge.builder("search.geo.cache.entries", this, GeoSearchCache::size).register(meterRegistry);
+        Gauge.builder("search.geo.cache.candidates", this, GeoSearchCache::candidates).register(meterRegistry);
+        FunctionCounter.builder("search.geo.cache.coalesced", loads, SingleFlight::collapsed)
+                .description("cache misses answered by a load of the same entry already in flight")
+                .register(meterRegistry);
+    }
+
+    // same contract as CustomLocationRepository.searchAvailable
+    public List<LocationHit> searchAvailable(double lat, double lon, String distance, int guestNumber, LocalDate checkinDate, LocalDate checkoutDate, LocationHit searchAfter, int size) {
+        if (!enabled) {
+            return locationRepository.searchAvailable(lat, lon, distance, guestNumber, checkinDate, checkoutDate, searchAfter, size);
+        }
+        double distanceKm = GeoUtil.parseDistanceKm(distance);
+        if (distanceKm > maxDistanceKm) {
+            bypasses.increment();
+            return locationRepository.searchAvailable(lat, lon, distance, guestNumber, checkinDate, checkoutDate, searchAfter, size);
+        }
+        Entry entry = lookup(lat, lon, bucket(distanceKm));
+
+        // keep only the size closest matches after searchAfter: a max-heap, so the worst kept hit is always on top. Hits compare by
+        // (distance, numeric id), the order of the Elasticsearch query, so a cursor from either side resumes at the same stay
+        PriorityQueue<LocationHit> closest = new PriorityQueue<>(size + 1, Comparator.reverseOrder());
+        for (int i = 0; i < entry.ids.length; i++) {
+            if (entry.guestNumbers[i] < guestNumber) {
+                continue;
+            }
+            double hitDistance = GeoUtil.distanceKm(lat, lon, entry.lats[i], entry.lons[i]);
+            if (hitDistance > distanceKm) {
+                continue;
+            }
+            LocationHit hit = new LocationHit(entry.ids[i], hitDistance);
+            if (searchAfter != null && hit.compareTo(searchAfter) <= 0) {
+                continue;
+            }
+            if (closest.size() == size && hit.compareTo(closest.peek()) >= 0) {
+                continue;         // cheaper than the availability check below
+            }
+            if (checkinDate != null && !"database".equals(availabilitySource) && !availabilityIndex.isAvailable(entry.ids[i], checkinDate, checkoutDate)) {
+                continue;
+            }
+            closest.offer(hit);
+            if (closest.size() > size) {
+                closest.poll();
+            }
+        }
+        List<LocationHit> page = new ArrayList<>(closest);
+        Collections.sort(page);
+        return page;
+    }
+
+    // a stay was indexed at (lat, lon): drop every entry whose area contains that point
+    public synchronized void invalidate(double lat, double lon) {
+        generation++;
+        removeIf(entry -> GeoUtil.distanceKm(entry.centerLat, entry.centerLon, lat, lon) <= entry.radiusKm);
+    }
+
+    // a stay was deleted: drop every entry that lists it
+    public synchronized void invalidate(Long stayId) {
+        generation++;
+        removeIf(entry -> entry.contains(stayId));
+    }
+
+    // the smallest bucket that covers distanceKm, at most maxDistanceKm
+    private double bucket(double distanceKm) {
+        for (double bucketKm : distanceBucketsKm) {
+            if (bucketKm >= distanceKm && bucketKm <= maxDistanceKm) {
+                return bucketKm;
+            }
+        }
+        return maxDistanceKm;
+    }
+
+    // an entry for every stay within distanceKm (a bucket) of any point of the cell around (lat, lon)
+    private Entry lookup(double lat, double lon, double distanceKm) {
+        GeoUtil.Cell cell = GeoUtil.cell(lat, lon, precision);
+        String key = cell.getHash() + "/" + distanceKm;
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.isExpired()) {
+                remove(key);
+                evictions.increment();
+                entry = null;
+            }
+            if (entry != null) {
+                hits.increment();
+                return entry;
+            }
+            misses.increment();
+        }
+        return loads.execute(key, () -> load(key, cell, distanceKm));
+    }
+
+    private Entry load(String key, GeoUtil.Cell cell, double distanceKm) {
+        long loadGeneration;
+        synchronized (this) {
+            loadGeneration = generation;
+        }
+        // searching from the cell center with the radius grown by half the cell diagonal covers the radius around any point of the cell
+        double radiusKm = distanceKm + cell.getHalfDiagonalKm();
+        Entry entry = new Entry(cell.getCenterLat(), cell.getCenterLon(), radiusKm,
+                locationRepository.searchByDistance(cell.getCenterLat(), cell.getCenterLon(), String.valueOf(radiusKm)),
+                System.nanoTime() + TimeUnit.SECONDS.toNanos(ttlSeconds));
+        synchronized (this) {
+            // a stay added or deleted while we were loading may be missing from (or still in) what we loaded, so don't keep it
+            if (generation == loadGeneration) {
+                put(key, entry);
+            }
+        }
+        return entry;
+    }
+
+    private void put(String key, Entry entry) {
+        remove(key);
+        entries.put(key, entry);
+        cachedCandidates += entry.ids.length;
+        Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+        while ((entries.size() > maxEntries || cachedCandidates > maxCandidates) && entries.size() > 1) {
+            Entry evicted = eldest.next().getValue();
+            eldest.remove();
+            cachedCandidates -= evicted.ids.length;
+            evictions.increment();
+        }
+    }
+
+    private void remove(String key) {
+        Entry removed = entries.remove(key);
+        if (removed != null) {
+            cachedCandidates -= removed.ids.length;
+        }
+    }
+
+    private void removeIf(Predicate<Entry> predicate) {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (predicate.test(entry)) {
+                iterator.remove();
+                cachedCandidates -= entry.ids.length;
+                invalidations.increment();
+            }
+        }
+    }
+
+    private synchronized int size() {
+        return entries.size();
+    }
+
+    private synchronized long candidates() {
+        return cachedCandidates;
+    }
+
+    private static class Entry {
+        final double centerLat;
+        final double centerLon;
+        final double radiusKm;
+        final long[] ids;
+        final double[] lats;
+        final double[] lons;
+        final int[] guestNumbers;
+        final long expiresAt;
+
+        Entry(double centerLat, double centerLon, double radiusKm, List<Location> locations, long expiresAt) {
+            this.centerLat = centerLat;
+            this.centerLon = centerLon;
+            this.radiusKm = radiusKm;
+            this.expiresAt = expiresAt;
+            ids = new long[locations.size()];
+            lats = new double[locations.size()];
+            lons = new double[locations.size()];
+            guestNumbers = new int[locations.size()];
+            for (int i = 0; i < locations.size(); i++) {
+                Location location = locations.get(i);
+                ids[i] = location.getId();
+                lats[i] = location.getGeoPoint().getLat();
+                lons[i] = location.getGeoPoint().getLon();
+                guestNumbers[i] = location.getGuestNumber();
+            }
+        }
+
+        boolean isExpired() {
+            return System.nanoTime() - expiresAt > 0;
+        }
+
+        boolean contains(Long stayId) {
+            for (long id : ids) {
+                if (id == stayId) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
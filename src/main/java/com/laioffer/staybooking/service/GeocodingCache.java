@@ -0,0 +1,107 @@
+package com.laioffer.staybooking.service;
+
+import com.laioffer.staybooking.model.GeocodedAddress;
+import com.laioffer.staybooking.repository.GeocodedAddressRepository;
+import com.laioffer.staybooking.util.AddressUtil;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*Two-tier cache of geocoding results in front of the Google Geocoding API, keyed by normalized address (see AddressUtil).
+The first tier is an in-memory LRU of geocoding.cache.max-entries results, the second the geocoded_address table, which
+survives restarts; a database hit is copied into memory. New results are written to both.
+
+Coordinates of a building do not change, so matched addresses never expire. Partial-match rejections expire after
+geocoding.cache.rejected-ttl-days, in case Google learns the address later. Transient failures are not cached at all.
+Lookups are counted in geocoding.cache.requests{result=memory|database|miss}.*/
+@Component
+public class GeocodingCache {
+
+    @Value("${geocoding.cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${geocoding.cache.max-entries:10000}")
+    private int maxEntries;
+
+    @Value("${geocoding.cache.rejected-ttl-days:30}")
+    private long rejectedTtlDays;
+
+    private final GeocodedAddressRepository geocodedAddressRepository;
+    private final Counter memoryHits;
+    private final Counter databaseHits;
+    private final Counter misses;
+
+    // access ordered, so iteration starts at the least recently used entry. Guarded by this.
+    private final Map<String, GeocodedAddress> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    public GeocodingCache(GeocodedAddressRepository geocodedAddressRepository, MeterRegistry meterRegistry) {
+        this.geocodedAddressRepository = geocodedAddressRepository;
+        this.memoryHits = meterRegistry.counter("geocoding.cache.requests", "result", "memory");
+        this.databaseHits = meterRegistry.counter("geocoding.cache.requests", "result", "database");
+        this.misses = meterRegistry.counter("geocoding.cache.requests", "result", "miss");
+        Gauge.builder("geocoding.cache.entries", this, GeocodingCache::size).register(meterRegistry);
+    }
+
+    // the remembered result for a normalized address, or null if it has to be geocoded
+    public GeocodedAddress get(String address) {
+        if (!enabled) {
+            return null;
+        }
+        String hash = AddressUtil.hash(address);
+        synchronized (this) {
+            GeocodedAddress cached = entries.get(hash);
+            if (cached != null && !isExpired(cached)) {
+                memoryHits.increment();
+                return cached;
+            }
+            entries.remove(hash);
+        }
+        GeocodedAddress stored = geocodedAddressRepository.findById(hash).orElse(null);
+        if (stored == null || isExpired(stored)) {
+            misses.increment();
+            return null;
+        }
+        databaseHits.increment();
+        remember(stored);
+        return stored;
+    }
+
+    public void put(String address, boolean matched, Double latitude, Double longitude) {
+        if (!enabled) {
+            return;
+        }
+        GeocodedAddress result = new GeocodedAddress(AddressUtil.hash(address), address, matched, latitude, longitude);
+        try {
+            geocodedAddressRepository.save(result);        // replaces an expired rejection
+        } catch (DataIntegrityViolationException e) {
+            // stored concurrently by another geocoding of the same address, which got the same answer
+        }
+        remember(result);
+    }
+
+    private synchronized void remember(GeocodedAddress result) {
+        entries.put(result.getAddressHash(), result);
+        Iterator<GeocodedAddress> eldest = entries.values().iterator();
+        while (entries.size() > maxEntries) {
+            eldest.next();
+            eldest.remove();
+        }
+    }
+
+    private boolean isExpired(GeocodedAddress result) {
+        return !result.isMatched() && result.getGeocodedAt().plus(Duration.ofDays(rejectedTtlDays)).isBefore(Instant.now());
+    }
+
+    private synchronized int size() {
+        return entries.size();
+    }
+}
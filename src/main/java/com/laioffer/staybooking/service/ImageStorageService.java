@@ -4,6 +4,11 @@ import com.google.cloud.storage.Acl;
 import com.google.cloud.storage.BlobInfo;
 import com.google.cloud.storage.Storage;
 import com.laioffer.staybooking.exception.GCSUploadException;
+import com.laioffer.staybooking.exception.ImageUploadBusyException;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
@@ -11,18 +16,68 @@ import org.springframework.web.multipart.MultipartFile;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
+/*Uploads stay images to GCS. saveAll runs the uploads of one stay on the imageUploadExecutor (see ExecutorConfig) instead of a
+parallel stream, which would block threads of the JVM-wide common ForkJoinPool on network I/O. The pool is bounded: when it is
+saturated saveAll fails fast with ImageUploadBusyException (503), and a request never waits longer than
+image.upload.timeout-seconds for its uploads. Upload latency is published as image.upload, waiting uploads as image.upload.queued.*/
 @Service
 public class ImageStorageService {
 
     @Value("${gcs.bucket}")     //This annotation is used to inject the value of the gcs.bucket property from the application.properties file. It represents the name of the Google Cloud Storage bucket where the images will be uploaded.
     private String bucketName;     //整个project里，bucket name肯定不会变，而且假如bucket name一旦改变可能后果惨重。preferred的写法是，把这个写成一个final field，在constructor里创建。
 
+    @Value("${image.upload.timeout-seconds:30}")
+    private long timeoutSeconds;
+
     private final Storage storage;   //an instance of the Storage class, which provides methods to interact with Google Cloud Storage.
+    private final ThreadPoolExecutor executor;
+    private final Timer uploadTime;
 
-    public ImageStorageService(Storage storage) {
+    public ImageStorageService(Storage storage, @Qualifier("imageUploadExecutor") ThreadPoolExecutor executor, MeterRegistry meterRegistry) {
         this.storage = storage;
+        this.executor = executor;
+        this.uploadTime = meterRegistry.timer("image.upload");
+        Gauge.builder("image.upload.queued", executor, pool -> pool.getQueue().size()).register(meterRegistry);
+        Gauge.builder("image.upload.active", executor, ThreadPoolExecutor::getActiveCount).register(meterRegistry);
+    }
+
+    // uploads all files concurrently and returns their media links in the same order. If one upload fails, the others are cancelled
+    public List<String> saveAll(List<MultipartFile> files) throws GCSUploadException, ImageUploadBusyException {
+        List<Future<String>> uploads = new ArrayList<>(files.size());
+        try {
+            for (MultipartFile file : files) {
+                uploads.add(executor.submit(() -> uploadTime.recordCallable(() -> save(file))));
+            }
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(timeoutSeconds);
+            List<String> mediaLinks = new ArrayList<>(files.size());
+            for (Future<String> upload : uploads) {
+                mediaLinks.add(upload.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+            }
+            return mediaLinks;
+        } catch (RejectedExecutionException e) {
+            throw new ImageUploadBusyException("Too many image uploads in progress, please try again later");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof GCSUploadException) {
+                throw (GCSUploadException) e.getCause();
+            }
+            throw new GCSUploadException("Failed to upload file to GCS");
+        } catch (TimeoutException e) {
+            throw new GCSUploadException("Timed out uploading files to GCS");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GCSUploadException("Interrupted while uploading files to GCS");
+        } finally {
+            uploads.forEach(upload -> upload.cancel(true));     // no-op for finished uploads, frees the threads of the rest on failure
+        }
     }
 
     public String save(MultipartFile file) throws GCSUploadException {    // images可以从前端发好几张 => 所以multi part file
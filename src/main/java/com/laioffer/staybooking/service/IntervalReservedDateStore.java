@@ -0,0 +1,143 @@
+package com.laioffer.staybooking.service;
+
+import com.laioffer.staybooking.exception.ReservationCollisionException;
+import com.laioffer.staybooking.model.BookedRange;
+import com.laioffer.staybooking.model.Stay;
+import com.laioffer.staybooking.model.StayReservedInterval;
+import com.laioffer.staybooking.repository.StayRepository;
+import com.laioffer.staybooking.repository.StayReservationDateRepository;
+import com.laioffer.staybooking.repository.StayReservedIntervalRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/*Interval storage: one stay_reserved_interval row per booking instead of one row per night, so the table (and the depth of its
+(stay_id, checkin_date) index) shrinks by about the average length of stay. There is no per-night primary key to reject a double
+booking any more, so reserve() locks the stay row and checks for an overlapping interval inside the booking transaction.
+
+At startup, any stay_reserved_date rows left from night storage are collapsed into intervals, one stay per transaction, so the
+migration can be interrupted and simply resumes on the next start. Each stay is migrated under its row lock and its night rows
+are read after taking it, so instances starting together never collapse the same rows twice.*/
+@Component
+@ConditionalOnProperty(name = "reservation.storage", havingValue = "intervals")
+public class IntervalReservedDateStore implements ReservedDateStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(IntervalReservedDateStore.class);
+
+    private final StayReservedIntervalRepository stayReservedIntervalRepository;
+    private final StayReservationDateRepository stayReservationDateRepository;
+    private final StayRepository stayRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    public IntervalReservedDateStore(StayReservedIntervalRepository stayReservedIntervalRepository, StayReservationDateRepository stayReservationDateRepository,
+                                     StayRepository stayRepository, PlatformTransactionManager transactionManager) {
+        this.stayReservedIntervalRepository = stayReservedIntervalRepository;
+        this.stayReservationDateRepository = stayReservationDateRepository;
+        this.stayRepository = stayRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @PostConstruct
+    public void migrateNightRows() {
+        List<Long> stayIds = stayReservationDateRepository.findStayIds();
+        if (stayIds.isEmpty()) {
+            return;
+        }
+        logger.info("Collapsing stay_reserved_date rows of {} stays into stay_reserved_interval", stayIds.size());
+        for (Long stayId : stayIds) {
+            transactionTemplate.executeWithoutResult(status -> {
+                // another instance may be migrating the same stay: wait for it, then read what it left (nothing, if it finished)
+                stayRepository.lockById(stayId);
+                LocalDate runStart = null;
+                LocalDate runEnd = null;
+                List<StayReservedInterval> intervals = new ArrayList<>();
+                for (LocalDate date : stayReservationDateRepository.findDatesByStayId(stayId)) {
+                    if (!date.equals(runEnd)) {          // dates come sorted, so a gap ends the current run
+                        if (runStart != null) {
+                            intervals.add(new StayReservedInterval(stayId, runStart, runEnd));
+                        }
+                        runStart = date;
+                    }
+                    runEnd = date.plusDays(1);
+                }
+                if (runStart != null) {
+                    intervals.add(new StayReservedInterval(stayId, runStart, runEnd));
+                }
+                stayReservedIntervalRepository.saveAll(intervals);
+                stayReservationDateRepository.deleteByStayId(stayId);
+            });
+        }
+    }
+
+    @Override
+    public void reserve(Stay stay, LocalDate checkinDate, LocalDate checkoutDate) throws ReservationCollisionException {
+        // serializes bookings of this stay across instances until the transaction ends; other stays are not blocked
+        stayRepository.lockById(stay.getId());
+        if (stayReservedIntervalRepository.countOverlapping(stay.getId(), checkinDate, checkoutDate) > 0) {
+            throw new ReservationCollisionException("Duplicate reservation");
+        }
+        stayReservedIntervalRepository.save(new StayReservedInterval(stay.getId(), checkinDate, checkoutDate));
+    }
+
+    // removes [checkinDate, checkoutDate) from whatever intervals cover it, keeping the parts outside (intervals collapsed by
+    // the migration can span several reservations). Locked like reserve(): two cancellations inside one collapsed interval
+    // would otherwise both re-insert remainders that contain the nights the other one cancelled
+    @Override
+    public void release(Long stayId, LocalDate checkinDate, LocalDate checkoutDate) {
+        stayRepository.lockById(stayId);
+        List<StayReservedInterval> overlapping = stayReservedIntervalRepository.findOverlappingForUpdate(stayId, checkinDate, checkoutDate);
+        List<StayReservedInterval> remainders = new ArrayList<>();
+        for (StayReservedInterval interval : overlapping) {
+            if (interval.getCheckinDate().isBefore(checkinDate)) {
+                remainders.add(new StayReservedInterval(stayId, interval.getCheckinDate(), checkinDate));
+            }
+            if (interval.getCheckoutDate().isAfter(checkoutDate)) {
+                remainders.add(new StayReservedInterval(stayId, checkoutDate, interval.getCheckoutDate()));
+            }
+        }
+        stayReservedIntervalRepository.deleteAllInBatch(overlapping);
+        stayReservedIntervalRepository.saveAll(remainders);
+    }
+
+    @Override
+    public void removeStay(Long stayId) {
+        stayReservedIntervalRepository.deleteByStayId(stayId);
+    }
+
+    @Override
+    public void forEachBookedRun(LocalDate fromDate, BookedRunConsumer consumer) {
+        for (StayReservedInterval interval : stayReservedIntervalRepository.findByCheckoutDateAfter(fromDate)) {
+            LocalDate start = interval.getCheckinDate().isBefore(fromDate) ? fromDate : interval.getCheckinDate();
+            consumer.accept(interval.getStayId(), start, interval.getCheckoutDate());
+        }
+    }
+
+    @Override
+    public Collection<Long> findReservedStayIds(List<Long> stayIds, LocalDate checkinDate, LocalDate checkoutDate) {
+        return stayReservedIntervalRepository.findStayIdsOverlapping(stayIds, checkinDate, checkoutDate);
+    }
+
+    @Override
+    public List<BookedRange> bookedRanges(Long stayId, LocalDate from, LocalDate to) {
+        List<BookedRange> ranges = new ArrayList<>();
+        for (StayReservedInterval interval : stayReservedIntervalRepository.findOverlapping(stayId, from, to)) {
+            LocalDate start = interval.getCheckinDate().isBefore(from) ? from : interval.getCheckinDate();
+            LocalDate end = interval.getCheckoutDate().isAfter(to) ? to : interval.getCheckoutDate();
+            if (!ranges.isEmpty() && ranges.get(ranges.size() - 1).getLt().equals(start)) {
+                ranges.set(ranges.size() - 1, new BookedRange(ranges.get(ranges.size() - 1).getGte(), end));     // adjacent bookings form one run
+            } else {
+                ranges.add(new BookedRange(start, end));
+            }
+        }
+        return ranges;
+    }
+}
@@ -0,0 +1,102 @@
+package com.laioffer.staybooking.service;
+
+import com.laioffer.staybooking.model.BookedRange;
+import com.laioffer.staybooking.model.Location;
+import com.laioffer.staybooking.model.OutboxEvent;
+import com.laioffer.staybooking.model.StayIndexStatus;
+import com.laioffer.staybooking.repository.CustomLocationRepository;
+import com.laioffer.staybooking.repository.StayRepository;
+import org.springframework.data.elasticsearch.core.geo.GeoPoint;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/*Keeps the location index (the "loc" index in Elasticsearch, or the embedded one) and GeoSearchCache in line with the outbox.
+
+Only the latest state of a stay matters, so a batch touches each stay once however many events name it: added stays are
+(re)indexed from the stay table with their booked ranges, deleted stays are removed, and stays that only had reservations
+change get their booked ranges replaced, all as one bulk request each. Booked ranges are read from the ReservedDateStore,
+which is already committed when the event is visible, and a stay that no longer exists is skipped, so replays are harmless.*/
+@Component
+public class LocationIndexConsumer implements OutboxConsumer {
+
+    private static final LocalDate MAX_DATE = LocalDate.of(9999, 12, 31);
+
+    private final CustomLocationRepository locationRepository;
+    private final StayRepository stayRepository;
+    private final ReservedDateStore reservedDateStore;
+    private final GeoSearchCache geoSearchCache;
+
+    public LocationIndexConsumer(CustomLocationRepository locationRepository, StayRepository stayRepository, ReservedDateStore reservedDateStore, GeoSearchCache geoSearchCache) {
+        this.locationRepository = locationRepository;
+        this.stayRepository = stayRepository;
+        this.reservedDateStore = reservedDateStore;
+        this.geoSearchCache = geoSearchCache;
+    }
+
+    @Override
+    public void accept(List<OutboxEvent> events) {
+        Set<Long> added = new LinkedHashSet<>();
+        Set<Long> deleted = new LinkedHashSet<>();
+        Set<Long> rebooked = new LinkedHashSet<>();
+        for (OutboxEvent event : events) {
+            Long stayId = event.getStayId();
+            switch (event.getType()) {
+                case STAY_ADDED:
+                    added.add(stayId);
+                    deleted.remove(stayId);
+                    break;
+                case STAY_DELETED:
+                    deleted.add(stayId);
+                    added.remove(stayId);
+                    rebooked.remove(stayId);
+                    break;
+                default:
+                    rebooked.add(stayId);
+            }
+        }
+
+        if (!deleted.isEmpty()) {
+            locationRepository.removeAll(deleted);
+            for (Long stayId : deleted) {
+                geoSearchCache.invalidate(stayId);
+            }
+        }
+
+        Set<Long> touched = new LinkedHashSet<>(added);
+        touched.addAll(rebooked);
+        if (touched.isEmpty()) {
+            return;
+        }
+        LocalDate today = LocalDate.now();
+        List<Location> locations = new ArrayList<>();
+        Map<Long, List<BookedRange>> bookedRanges = new HashMap<>();
+        for (Object[] row : stayRepository.findCoordinatesByIdIn(touched)) {
+            Long stayId = (Long) row[0];
+            List<BookedRange> ranges = reservedDateStore.bookedRanges(stayId, today, MAX_DATE);
+            if (added.contains(stayId)) {
+                locations.add(new Location(stayId, new GeoPoint((Double) row[1], (Double) row[2]))
+                        .setGuestNumber((Integer) row[3])
+                        .setBookedRanges(ranges));
+            } else {
+                bookedRanges.put(stayId, ranges);
+            }
+        }
+        locationRepository.indexAll(locations);
+        locationRepository.updateBookedRanges(bookedRanges);
+        if (!locations.isEmpty()) {     // new stays are searchable now, see StayGeocodingService
+            stayRepository.setIndexStatusIfStatus(locations.stream().map(Location::getId).collect(Collectors.toList()),
+                    StayIndexStatus.INDEXING, StayIndexStatus.INDEXED);
+        }
+        for (Location location : locations) {      // after indexing, so a reload of the cache sees the new stay
+            geoSearchCache.invalidate(location.getGeoPoint().getLat(), location.getGeoPoint().getLon());
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package com.laioffer.staybooking.service;
+
+import com.laioffer.staybooking.exception.ReindexInProgressException;
+import com.laioffer.staybooking.model.Location;
+import com.laioffer.staybooking.model.ReindexProgress;
+import com.laioffer.staybooking.model.ReindexStatus;
+import com.laioffer.staybooking.model.StayIndexStatus;
+import com.laioffer.staybooking.repository.CustomLocationRepository;
+import com.laioffer.staybooking.repository.LocationIndexRebuild;
+import com.laioffer.staybooking.repository.StayRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.elasticsearch.core.geo.GeoPoint;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*Rebuilds the whole location index from MySQL, for a mapping change or a lost cluster (POST /admin/reindex).
+
+The job reads every stay in keyset pages of reindex.page-size ordered by id, and hands each page to one of reindex.threads
+writers. A writer builds the Location documents, with booked ranges from the AvailabilityIndex, and sends them as one bulk
+request into a fresh index (see CustomLocationRepository.startRebuild). At most two pages per writer are in flight, so reading
+never runs far ahead of Elasticsearch. Stays that were indexed before their coordinates were stored on the stay are geocoded
+again through the GeoCodingService cache by the writers in parallel, and the coordinates are saved. Stays still PENDING or FAILED
+geocoding are not searchable yet and are skipped. When every page is written the new index replaces the live one in one step.
+
+Searches keep using the old index the whole time. The outbox dispatcher is paused for the duration, so changes made during the
+rebuild wait in outbox_event and are applied to the new index right after the switch. Progress is available from progress()
+and as the location.reindex.processed and location.reindex.total gauges.*/
+@Service
+public class LocationReindexService {
+
+    private static final Logger logger = LoggerFactory.getLogger(LocationReindexService.class);
+
+    private final StayRepository stayRepository;
+    private final CustomLocationRepository locationRepository;
+    private final AvailabilityIndex availabilityIndex;
+    private final GeoCodingService geoCodingService;
+    private final OutboxService outboxService;
+    private final ExecutorService executor;
+    private final ExecutorService writerExecutor;
+
+    @Value("${reindex.page-size:2000}")
+    private int pageSize;
+
+    @Value("${reindex.threads:4}")
+    private int threads;
+
+    // progress of the current or last job. Only start() replaces the job; the counters are written by the writer threads
+    private volatile ReindexStatus status = ReindexStatus.IDLE;
+    private volatile String index;
+    private volatile long total;
+    private volatile Instant startedAt;
+    private volatile Instant finishedAt;
+    private volatile String error;
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong indexed = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+
+    public LocationReindexService(StayRepository stayRepository, CustomLocationRepository locationRepository, AvailabilityIndex availabilityIndex,
+                                  GeoCodingService geoCodingService, OutboxService outboxService, @Qualifier("reindexExecutor") ExecutorService executor,
+                                  @Qualifier("reindexWriterExecutor") ExecutorService writerExecutor, MeterRegistry meterRegistry) {
+        this.stayRepository = stayRepository;
+        this.locationRepository = locationRepository;
+        this.availabilityIndex = availabilityIndex;
+        this.geoCodingService = geoCodingService;
+        this.outboxService = outboxService;
+        this.executor = executor;
+        this.writerExecutor = writerExecutor;
+        Gauge.builder("location.reindex.processed", processed, AtomicLong::get).register(meterRegistry);
+        Gauge.builder("location.reindex.total", this, service -> service.total).register(meterRegistry);
+    }
+
+    public synchronized ReindexProgress start() throws ReindexInProgressException {
+        if (status == ReindexStatus.RUNNING) {
+            throw new ReindexInProgressException("A reindex is already running");
+        }
+        status = ReindexStatus.RUNNING;
+        index = null;
+        total = stayRepository.count();
+        startedAt = Instant.now();
+        finishedAt = null;
+        error = null;
+        processed.set(0);
+        indexed.set(0);
+        skipped.set(0);
+        executor.execute(this::run);
+        return progress();
+    }
+
+    public ReindexProgress progress() {
+        long done = processed.get();
+        Instant end = finishedAt == null ? Instant.now() : finishedAt;
+        double seconds = startedAt == null ? 0 : Duration.between(startedAt, end).toMillis() / 1000.0;
+        double rate = seconds > 0 ? done / seconds : 0;
+        Long eta = status == ReindexStatus.RUNNING && rate > 0 ? (long) Math.ceil(Math.max(0, total - done) / rate) : null;
+        return new ReindexProgress(status, index, total, done, indexed.get(), skipped.get(), startedAt, finishedAt, rate, eta, error);
+    }
+
+    private void run() {
+        LocationIndexRebuild rebuild = null;
+        outboxService.pause();
+        try {
+            rebuild = locationRepository.startRebuild();
+            index = rebuild.getName();
+            logger.info("Reindexing {} stays into {}", total, index);
+            write(rebuild);
+            rebuild.publish();
+            status = ReindexStatus.COMPLETED;
+            logger.info("Reindexed {} stays into {} ({} skipped) in {}", indexed.get(), index, skipped.get(), Duration.between(startedAt, Instant.now()));
+        } catch (RuntimeException e) {
+            logger.warn("Reindexing into {} failed", index, e);
+            if (rebuild != null) {
+                try {
+                    rebuild.abort();
+                } catch (RuntimeException abortFailure) {
+                    e.addSuppressed(abortFailure);
+                }
+            }
+            error = e.getMessage();
+            status = ReindexStatus.FAILED;
+        } finally {
+            finishedAt = Instant.now();
+            outboxService.resume();
+        }
+    }
+
+    private void write(LocationIndexRebuild rebuild) {
+        Semaphore inFlight = new Semaphore(2 * threads);
+        List<Future<?>> pages = new ArrayList<>();
+        LocalDate today = LocalDate.now();
+        Long after = 0L;
+        try {
+            while (true) {
+                List<Object[]> page = stayRepository.findIndexRowsAfter(after, PageRequest.of(0, pageSize));
+                if (page.isEmpty()) {
+                    break;
+                }
+                after = (Long) page.get(page.size() - 1)[0];
+                inFlight.acquire();
+                pages.add(writerExecutor.submit(() -> {
+                    try {
+                        rebuild.indexAll(toLocations(page, today));
+                        processed.addAndGet(page.size());
+                    } finally {
+                        inFlight.release();
+                    }
+                }));
+                // drop written pages, so the list stays as short as the pages in flight, and stop at the first failed one
+                Iterator<Future<?>> written = pages.iterator();
+                while (written.hasNext()) {
+                    Future<?> next = written.next();
+                    if (next.isDone()) {
+                        next.get();
+                        written.remove();
+                    }
+                }
+            }
+            for (Future<?> page : pages) {
+                page.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Reindex interrupted");
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Writing a page failed: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            inFlight.acquireUninterruptibly(2 * threads);     // no writer may still be running when the index is published or dropped
+        }
+    }
+
+    private List<Location> toLocations(List<Object[]> page, LocalDate today) {
+        List<Location> locations = new ArrayList<>(page.size());
+        for (Object[] row : page) {
+            Long stayId = (Long) row[0];
+            Double latitude = (Double) row[1];
+            Double longitude = (Double) row[2];
+            StayIndexStatus indexStatus = (StayIndexStatus) row[5];
+            if (indexStatus == StayIndexStatus.PENDING || indexStatus == StayIndexStatus.FAILED) {
+                skipped.incrementAndGet();        // the geocoder indexes a PENDING stay through the outbox once it is done
+                continue;
+            }
+            if (latitude == null || longitude == null) {
+                try {
+                    GeoPoint point = geoCodingService.getLatLng(stayId, (String) row[4]).getGeoPoint();
+                    latitude = point.getLat();
+                    longitude = point.getLon();
+                    stayRepository.setMissingCoordinates(stayId, latitude, longitude);
+                } catch (RuntimeException e) {
+                    logger.warn("Skipping stay {}, its address could not be geocoded", stayId, e);
+                    skipped.incrementAndGet();
+                    continue;
+                }
+            }
+            locations.add(new Location(stayId, new GeoPoint(latitude, longitude))
+                    .setGuestNumber((Integer) row[3])
+                    .setBookedRanges(availabilityIndex.bookedRanges(stayId, today)));
+        }
+        indexed.addAndGet(locations.size());
+        return locations;
+    }
+}
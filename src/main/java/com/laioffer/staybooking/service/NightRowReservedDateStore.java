@@ -0,0 +1,99 @@
+package com.laioffer.staybooking.service;
+
+import com.laioffer.staybooking.model.BookedRange;
+import com.laioffer.staybooking.model.Stay;
+import com.laioffer.staybooking.model.StayReservedDate;
+import com.laioffer.staybooking.model.StayReservedDateKey;
+import com.laioffer.staybooking.repository.ArchivedStayReservedDateRepository;
+import com.laioffer.staybooking.repository.StayRepository;
+import com.laioffer.staybooking.repository.StayReservationDateRepository;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+// the original storage: one stay_reserved_date row per booked night, whose (stay_id, date) primary key rejects a double booking.
+// Nights older than the archive horizon live in stay_reserved_date_archive instead, see ReservedDateArchiver
+@Component
+@ConditionalOnProperty(name = "reservation.storage", havingValue = "nights", matchIfMissing = true)
+public class NightRowReservedDateStore implements ReservedDateStore {
+
+    private final StayReservationDateRepository stayReservationDateRepository;
+    private final ArchivedStayReservedDateRepository archivedStayReservedDateRepository;
+    private final StayRepository stayRepository;
+
+    public NightRowReservedDateStore(StayReservationDateRepository stayReservationDateRepository, ArchivedStayReservedDateRepository archivedStayReservedDateRepository,
+                                     StayRepository stayRepository) {
+        this.stayReservationDateRepository = stayReservationDateRepository;
+        this.archivedStayReservedDateRepository = archivedStayReservedDateRepository;
+        this.stayRepository = stayRepository;
+    }
+
+    @Override
+    public void reserve(Stay stay, LocalDate checkinDate, LocalDate checkoutDate) {
+        // the nights are persisted, not merged, and @MapsId would try to persist a detached stay (e.g. one deserialized from the request)
+        // along with them, so attach them to a managed reference instead. It is a proxy: no SELECT of the stay
+        stay = stayRepository.getReferenceById(stay.getId());
+        List<StayReservedDate> reservedDates = new ArrayList<>();
+        for (LocalDate date = checkinDate; date.isBefore(checkoutDate); date = date.plusDays(1)) {
+            StayReservedDateKey id = new StayReservedDateKey(stay.getId(), date);    // stay reserved date is a composite key, therefore add two factors needed to build a key first
+            reservedDates.add(new StayReservedDate(id, stay));                      // and add the key to the list
+        }
+        stayReservationDateRepository.saveAll(reservedDates);     // persisted without a SELECT per night, flushed at commit as one batched multi-row INSERT
+    }
+
+    @Override
+    public void release(Long stayId, LocalDate checkinDate, LocalDate checkoutDate) {
+        stayReservationDateRepository.deleteByStayIdAndDateRange(stayId, checkinDate, checkoutDate);   // one statement
+        if (checkinDate.isBefore(LocalDate.now())) {         // only past nights can have been archived
+            archivedStayReservedDateRepository.deleteByStayIdAndDateRange(stayId, checkinDate, checkoutDate);
+        }
+    }
+
+    @Override
+    public void removeStay(Long stayId) {
+        stayReservationDateRepository.deleteByStayId(stayId);
+        archivedStayReservedDateRepository.deleteByStayId(stayId);
+    }
+
+    @Override
+    public void forEachBookedRun(LocalDate fromDate, BookedRunConsumer consumer) {
+        for (StayReservedDateKey key : stayReservationDateRepository.findKeysByDateFrom(fromDate)) {
+            consumer.accept(key.getStay_id(), key.getDate(), key.getDate().plusDays(1));
+        }
+    }
+
+    @Override
+    public Collection<Long> findReservedStayIds(List<Long> stayIds, LocalDate checkinDate, LocalDate checkoutDate) {
+        return stayReservationDateRepository.findByIdInAndDateBetween(stayIds, checkinDate, checkoutDate.minusDays(1));   // BETWEEN is inclusive
+    }
+
+    @Override
+    public List<BookedRange> bookedRanges(Long stayId, LocalDate from, LocalDate to) {
+        List<BookedRange> ranges = new ArrayList<>();
+        LocalDate runStart = null;
+        LocalDate runEnd = null;
+        List<LocalDate> dates = new ArrayList<>();
+        if (from.isBefore(LocalDate.now())) {
+            // the archiver moves a stay's nights oldest first, so archived dates all come before the ones still in the hot table
+            dates.addAll(archivedStayReservedDateRepository.findDatesByStayIdAndDateBetween(stayId, from, to.minusDays(1)));
+        }
+        dates.addAll(stayReservationDateRepository.findDatesByStayIdAndDateBetween(stayId, from, to.minusDays(1)));
+        for (LocalDate date : dates) {
+            if (!date.equals(runEnd)) {          // dates come sorted, so a gap ends the current run
+                if (runStart != null) {
+                    ranges.add(new BookedRange(runStart, runEnd));
+                }
+                runStart = date;
+            }
+            runEnd = date.plusDays(1);
+        }
+        if (runStart != null) {
+            ranges.add(new BookedRange(runStart, runEnd));
+        }
+        return ranges;
+    }
+}
@@ -0,0 +1,116 @@
+package com.laioffer.staybooking.service;
+
+import com.laioffer.staybooking.model.BookedRange;
+import com.laioffer.staybooking.model.MonthlyOccupancy;
+import com.laioffer.staybooking.model.StayOccupancy;
+import com.laioffer.staybooking.model.StayOccupancyKey;
+import com.laioffer.staybooking.model.User;
+import com.laioffer.staybooking.repository.StayOccupancyRepository;
+import com.laioffer.staybooking.repository.StayRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*Per-stay, per-month booked-night tallies (stay_occupancy) for the host occupancy report. ReservationService calls record() inside
+every booking and cancellation transaction, so a tally changes by exactly the nights of that reservation and commits or rolls back
+with it; the report reads O(stays x months) rows and never touches reservations.
+
+rebuild() recomputes every tally from the ReservedDateStore (stay_reserved_date with night storage), one stay per transaction.
+It runs at startup with occupancy.rebuild-on-startup=true, e.g. once when the table is first introduced or after a manual data fix.*/
+@Service
+public class OccupancyService {
+
+    private static final Logger logger = LoggerFactory.getLogger(OccupancyService.class);
+
+    // bounds of MySQL's DATE type: a rebuild counts every night ever booked
+    private static final LocalDate MIN_DATE = LocalDate.of(1000, 1, 1);
+    private static final LocalDate MAX_DATE = LocalDate.of(9999, 12, 31);
+
+    private final StayOccupancyRepository stayOccupancyRepository;
+    private final StayRepository stayRepository;
+    private final ReservedDateStore reservedDateStore;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${occupancy.rebuild-on-startup:false}")
+    private boolean rebuildOnStartup;
+
+    public OccupancyService(StayOccupancyRepository stayOccupancyRepository, StayRepository stayRepository, ReservedDateStore reservedDateStore,
+                            PlatformTransactionManager transactionManager) {
+        this.stayOccupancyRepository = stayOccupancyRepository;
+        this.stayRepository = stayRepository;
+        this.reservedDateStore = reservedDateStore;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    // adds the nights of [checkinDate, checkoutDate) to the months they fall in, or removes them with sign -1.
+    // Must run inside the transaction that books or cancels them
+    public void record(Long stayId, LocalDate checkinDate, LocalDate checkoutDate, int sign) {
+        LocalDate night = checkinDate;
+        while (night.isBefore(checkoutDate)) {
+            LocalDate month = night.withDayOfMonth(1);
+            LocalDate end = checkoutDate.isBefore(month.plusMonths(1)) ? checkoutDate : month.plusMonths(1);
+            stayOccupancyRepository.addBookedNights(stayId, month, sign * (int) ChronoUnit.DAYS.between(night, end));
+            night = end;
+        }
+    }
+
+    public void removeStay(Long stayId) {
+        stayOccupancyRepository.deleteByStayId(stayId);
+    }
+
+    // every stay of the host for every month in [from, to], months without bookings included with 0 nights
+    public List<MonthlyOccupancy> occupancy(String username, YearMonth from, YearMonth to) {
+        List<Long> stayIds = stayRepository.findIdsByHost(new User.Builder().setUsername(username).build());
+        List<MonthlyOccupancy> report = new ArrayList<>();
+        if (stayIds.isEmpty()) {
+            return report;
+        }
+        Map<StayOccupancyKey, Integer> booked = new HashMap<>();
+        for (StayOccupancy tally : stayOccupancyRepository.findByStayIdsAndMonthBetween(stayIds, from.atDay(1), to.atDay(1))) {
+            booked.put(tally.getId(), tally.getBookedNights());
+        }
+        for (Long stayId : stayIds) {
+            for (YearMonth month = from; !month.isAfter(to); month = month.plusMonths(1)) {
+                report.add(new MonthlyOccupancy(stayId, month.toString(),
+                        booked.getOrDefault(new StayOccupancyKey(stayId, month.atDay(1)), 0), month.lengthOfMonth()));
+            }
+        }
+        return report;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildOnStartup() {
+        if (rebuildOnStartup) {
+            rebuild();
+        }
+    }
+
+    public void rebuild() {
+        List<Long> stayIds = stayRepository.findAllIds();
+        logger.info("Rebuilding stay_occupancy of {} stays", stayIds.size());
+        for (Long stayId : stayIds) {
+            // deleting first locks the stay's tallies, so a booking committing meanwhile is either already in the nights
+            // read below or waits and adds its nights on top of the rebuilt tally
+            transactionTemplate.executeWithoutResult(status -> {
+                stayOccupancyRepository.deleteByStayId(stayId);
+                for (BookedRange range : reservedDateStore.bookedRanges(stayId, MIN_DATE, MAX_DATE)) {
+                    record(stayId, range.getGte(), range.getLt(), 1);
+                }
+            });
+        }
+        logger.info("Rebuilt stay_occupancy");
+    }
+}
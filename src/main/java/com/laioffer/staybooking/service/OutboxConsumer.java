@@ -0,0 +1,15 @@
+package com.laioffer.staybooking.service;
+
+import com.laioffer.staybooking.model.OutboxEvent;
+
+import java.util.List;
+
+/*A derived view that follows stay and reservation changes through the outbox. Every OutboxConsumer bean receives every event,
+in id (insert) order, which is not necessarily commit order, on the single dispatcher thread of OutboxService.
+
+Delivery is at least once: if any consumer throws, the whole batch is delivered again to all consumers on the next attempt, so
+handling an event twice must be harmless (e.g. re-read the stay and overwrite the view instead of applying a delta).*/
+public interface OutboxConsumer {
+
+    void accept(List<OutboxEvent> events);
+}
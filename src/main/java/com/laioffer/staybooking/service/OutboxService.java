@@ -0,0 +1,127 @@
+package com.laioffer.staybooking.service;
+
+import com.laioffer.staybooking.model.OutboxEvent;
+import com.laioffer.staybooking.model.OutboxEventType;
+import com.laioffer.staybooking.repository.OutboxEventRepository;
+import com.laioffer.staybooking.util.TransactionUtil;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+/*Transactional outbox of stay and reservation changes. StayService and ReservationService call publish() inside the transaction
+of the change, so the outbox_event row commits or rolls back with it; nothing on the request path talks to Elasticsearch.
+
+A single dispatcher thread drains the table oldest first in batches of outbox.batch-size, hands each batch to every
+OutboxConsumer and only then deletes it. A consumer that throws leaves the batch in place, and the whole batch is retried on
+the next poll, so delivery is at least once. The dispatcher is woken right after a commit that published events and also
+polls every outbox.poll-interval-ms, which picks up events left over from before a restart or whose wake-up was lost.
+
+Ids are assigned at insert, not at commit, so an event can become visible after one with a higher id was already delivered;
+it is then delivered with the next batch. Consumers re-read the current state of the stay, so they converge regardless.
+Like the in-memory AvailabilityIndex this assumes a single application instance: a second one would drain events whose
+per-process consumers (e.g. GeoSearchCache invalidation) then never run here.*/
+@Service
+public class OutboxService {
+
+    private static final Logger logger = LoggerFactory.getLogger(OutboxService.class);
+
+    private final OutboxEventRepository outboxEventRepository;
+    private final List<OutboxConsumer> consumers;
+    private final ScheduledExecutorService executor;
+    private final AtomicBoolean drainQueued = new AtomicBoolean();
+    private volatile boolean paused;
+    private final Counter dispatched;
+    private final Counter failures;
+
+    @Value("${outbox.batch-size:500}")
+    private int batchSize;
+
+    @Value("${outbox.poll-interval-ms:1000}")
+    private long pollIntervalMs;
+
+    public OutboxService(OutboxEventRepository outboxEventRepository, List<OutboxConsumer> consumers,
+                         @Qualifier("outboxDispatchExecutor") ScheduledExecutorService executor, MeterRegistry meterRegistry) {
+        this.outboxEventRepository = outboxEventRepository;
+        this.consumers = consumers;
+        this.executor = executor;
+        this.dispatched = meterRegistry.counter("outbox.events.dispatched");
+        this.failures = meterRegistry.counter("outbox.dispatch.failures");
+    }
+
+    @PostConstruct
+    public void start() {
+        executor.scheduleWithFixedDelay(this::drainSafely, pollIntervalMs, pollIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    // must be called inside the transaction that makes the change
+    public void publish(OutboxEventType type, Long stayId) {
+        outboxEventRepository.save(new OutboxEvent(type, stayId));
+        TransactionUtil.afterCommit(this::wake);
+    }
+
+    // stops dispatching until resume() and returns once a drain in progress has finished, e.g. while LocationReindexService
+    // rebuilds the index from MySQL. Events keep accumulating in outbox_event meanwhile and are delivered after resume()
+    public void pause() {
+        paused = true;
+        try {
+            executor.submit(() -> { }).get();        // the single dispatcher thread runs this only after the current drain
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public void resume() {
+        paused = false;
+        wake();
+    }
+
+    private void wake() {
+        if (drainQueued.compareAndSet(false, true)) {       // one queued drain covers any number of commits
+            executor.execute(this::drainSafely);
+        }
+    }
+
+    // a scheduled task that throws is never run again, so nothing may escape
+    private void drainSafely() {
+        drainQueued.set(false);
+        if (paused) {
+            return;
+        }
+        try {
+            drain();
+        } catch (RuntimeException e) {
+            failures.increment();
+            logger.warn("Outbox dispatch failed, retrying in {} ms", pollIntervalMs, e);
+        }
+    }
+
+    private void drain() {
+        List<OutboxEvent> batch;
+        do {
+            batch = outboxEventRepository.findOldest(PageRequest.of(0, batchSize));
+            if (batch.isEmpty()) {
+                return;
+            }
+            for (OutboxConsumer consumer : consumers) {
+                consumer.accept(batch);
+            }
+            outboxEventRepository.deleteAllByIdInBatch(batch.stream().map(OutboxEvent::getId).collect(Collectors.toList()));
+            dispatched.increment(batch.size());
+        } while (batch.size() == batchSize);
+    }
+}
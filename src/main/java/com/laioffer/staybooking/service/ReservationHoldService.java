@@ -0,0 +1,152 @@
+package com.laioffer.staybooking.service;
+
+import com.laioffer.staybooking.exception.HoldLimitExceededException;
+import com.laioffer.staybooking.exception.ReservationCollisionException;
+import com.laioffer.staybooking.exception.ReservationNotFoundException;
+import com.laioffer.staybooking.exception.StayNotExistException;
+import com.laioffer.staybooking.model.Reservation;
+import com.laioffer.staybooking.model.ReservationHold;
+import com.laioffer.staybooking.model.Stay;
+import com.laioffer.staybooking.model.User;
+import com.laioffer.staybooking.repository.StayRepository;
+import com.laioffer.staybooking.util.HashedTimingWheel;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/*Holds dates for a guest during checkout without writing anything to MySQL. A hold is a BookingAdmission claim that is kept
+for reservation.hold.ttl-seconds instead of for the length of one transaction, so ReservationService.add and search already
+treat held nights as taken. Expiry runs on a HashedTimingWheel: creating, releasing and expiring a hold are O(1) and there is
+no sweep over all holds.
+
+Confirming a hold removes it from the map first; whoever removes it (confirm, release or the expiry task) owns its claim, so a
+hold is either turned into a reservation under the same claim or released, never both. Holds live in this JVM only and are
+lost on restart, which simply frees the dates.
+
+A guest can have at most reservation.hold.max-per-guest active holds, so one account cannot keep a stay's calendar held.*/
+@Service
+public class ReservationHoldService {
+
+    private final BookingAdmission bookingAdmission;
+    private final ReservationService reservationService;
+    private final StayRepository stayRepository;
+    private final Map<String, Held> holds = new ConcurrentHashMap<>();
+    private final Map<String, Integer> activeByGuest = new ConcurrentHashMap<>();     // guest -> active holds, no entry for 0
+    private final HashedTimingWheel wheel = new HashedTimingWheel("reservation-hold-expiry", 1, TimeUnit.SECONDS, 512);
+
+    @Value("${reservation.hold.ttl-seconds:600}")
+    private long ttlSeconds;
+
+    @Value("${reservation.hold.max-per-guest:3}")
+    private int maxPerGuest;
+
+    private final Counter created;
+    private final Counter confirmed;
+    private final Counter released;
+    private final Counter expired;
+
+    public ReservationHoldService(BookingAdmission bookingAdmission, ReservationService reservationService, StayRepository stayRepository,
+                                  MeterRegistry meterRegistry) {
+        this.bookingAdmission = bookingAdmission;
+        this.reservationService = reservationService;
+        this.stayRepository = stayRepository;
+        this.created = meterRegistry.counter("reservation.holds", "result", "created");
+        this.confirmed = meterRegistry.counter("reservation.holds", "result", "confirmed");
+        this.released = meterRegistry.counter("reservation.holds", "result", "released");
+        this.expired = meterRegistry.counter("reservation.holds", "result", "expired");
+        Gauge.builder("reservation.holds.active", holds, Map::size).register(meterRegistry);
+    }
+
+    public ReservationHold hold(Long stayId, LocalDate checkinDate, LocalDate checkoutDate, String username)
+            throws StayNotExistException, HoldLimitExceededException, ReservationCollisionException {
+        if (!stayRepository.existsById(stayId)) {
+            throw new StayNotExistException("Stay doesn't exist");
+        }
+        if (activeByGuest.merge(username, 1, Integer::sum) > maxPerGuest) {
+            forget(username);
+            throw new HoldLimitExceededException("At most " + maxPerGuest + " dates can be held at a time");
+        }
+        BookingAdmission.Claim claim;
+        try {
+            claim = bookingAdmission.admit(stayId, checkinDate, checkoutDate);
+        } catch (RuntimeException e) {
+            forget(username);
+            throw e;
+        }
+        ReservationHold hold = new ReservationHold(UUID.randomUUID().toString(), stayId, username, checkinDate, checkoutDate,
+                Instant.now().plusSeconds(ttlSeconds));
+        Held held = new Held(hold, claim);
+        holds.put(hold.getId(), held);          // before the expiry is scheduled, which can run right away with a ttl of one tick
+        held.timeout = wheel.schedule(() -> {
+            if (holds.remove(hold.getId(), held)) {
+                forget(username);
+                claim.release();
+                expired.increment();
+            }
+        }, ttlSeconds, TimeUnit.SECONDS);
+        created.increment();
+        return hold;
+    }
+
+    // turns the hold into a reservation atomically: the nights stay claimed from the hold until the reservation is committed
+    public void confirm(String holdId, String username) throws ReservationNotFoundException, ReservationCollisionException {
+        Held held = take(holdId, username);
+        ReservationHold hold = held.hold;
+        Reservation reservation = new Reservation.Builder()
+                .setStay(new Stay.Builder().setId(hold.getStayId()).build())
+                .setGuest(new User.Builder().setUsername(username).build())
+                .setCheckinDate(hold.getCheckinDate())
+                .setCheckoutDate(hold.getCheckoutDate())
+                .build();
+        reservationService.add(reservation, held.claim);
+        confirmed.increment();
+    }
+
+    public void release(String holdId, String username) throws ReservationNotFoundException {
+        take(holdId, username).claim.release();
+        released.increment();
+    }
+
+    @PreDestroy
+    public void stop() {
+        wheel.stop();
+    }
+
+    private Held take(String holdId, String username) throws ReservationNotFoundException {
+        Held held = holds.get(holdId);
+        if (held == null || !held.hold.getGuest().equals(username) || !holds.remove(holdId, held)) {
+            throw new ReservationNotFoundException("Hold is not available");
+        }
+        forget(username);
+        HashedTimingWheel.Timeout timeout = held.timeout;
+        if (timeout != null) {          // null if taken before hold() scheduled it; the expiry then finds nothing to remove
+            timeout.cancel();
+        }
+        return held;
+    }
+
+    private void forget(String username) {
+        activeByGuest.computeIfPresent(username, (guest, active) -> active == 1 ? null : active - 1);
+    }
+
+    private static class Held {
+        final ReservationHold hold;
+        final BookingAdmission.Claim claim;
+        volatile HashedTimingWheel.Timeout timeout;
+
+        Held(ReservationHold hold, BookingAdmission.Claim claim) {
+            this.hold = hold;
+            this.claim = claim;
+        }
+    }
+}
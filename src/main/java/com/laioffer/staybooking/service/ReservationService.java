@@ -2,67 +2,151 @@ package com.laioffer.staybooking.service;
 
 import com.laioffer.staybooking.exception.ReservationCollisionException;
 import com.laioffer.staybooking.exception.ReservationNotFoundException;
+import com.laioffer.staybooking.exception.StayNotExistException;
 import com.laioffer.staybooking.model.*;
 import com.laioffer.staybooking.repository.ReservationRepository;
-import com.laioffer.staybooking.repository.StayReservationDateRepository;
+import com.laioffer.staybooking.util.ReservationCursorUtil;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 
 import javax.transaction.Transactional;
+import java.sql.SQLException;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Set;
 
 
 @Service
 public class ReservationService {
+    // bounds of MySQL's DATE type, for the unbounded ends of keyset queries
+    private static final LocalDate MIN_DATE = LocalDate.of(1000, 1, 1);
+    private static final LocalDate MAX_DATE = LocalDate.of(9999, 12, 31);
+    private static final String DUPLICATE_KEY = "23505";
+    private static final String MISSING_REFERENCE = "23506";
+
     private final ReservationRepository reservationRepository;
-    private final StayReservationDateRepository stayReservationDateRepository;
+    private final ReservedDateStore reservedDateStore;
+    private final AvailabilityIndex availabilityIndex;
+    private final AvailabilityCalendarService availabilityCalendarService;
+    private final BookingAdmission bookingAdmission;
+    private final OccupancyService occupancyService;
+    private final OutboxService outboxService;
+    private final TransactionTemplate transactionTemplate;
 
     @Autowired
-    // @Autowired automatically injects the dependencies (reservationRepository and stayReservationDateRepository) when the service is instantiated. 你让我自动跟他联系。但是当前代码里的field都是final，即使不写也会自动给我们连接
-    public ReservationService(ReservationRepository reservationRepository, StayReservationDateRepository stayReservationDateRepository) {
+    // @Autowired automatically injects the dependencies (reservationRepository and reservedDateStore) when the service is instantiated. 你让我自动跟他联系。但是当前代码里的field都是final，即使不写也会自动给我们连接
+    public ReservationService(ReservationRepository reservationRepository, ReservedDateStore reservedDateStore, AvailabilityIndex availabilityIndex, OutboxService outboxService, AvailabilityCalendarService availabilityCalendarService, BookingAdmission bookingAdmission, OccupancyService occupancyService, PlatformTransactionManager transactionManager) {
         this.reservationRepository = reservationRepository;
-        this.stayReservationDateRepository = stayReservationDateRepository;
+        this.reservedDateStore = reservedDateStore;
+        this.availabilityIndex = availabilityIndex;
+        this.outboxService = outboxService;
+        this.availabilityCalendarService = availabilityCalendarService;
+        this.bookingAdmission = bookingAdmission;
+        this.occupancyService = occupancyService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
     }
 
-    // This method retrieves a list of reservations associated with a guest's username using the reservationRepository.
-    public List<Reservation> listByGuest(String username) {
-         return reservationRepository.findByGuest_Username(username);
+    // This method retrieves one page of the reservations associated with a guest's username using the reservationRepository.
+    public ReservationPage listByGuest(String username, ReservationStatus status, int pageSize, String cursor) {
+        return page(status, pageSize, cursor, (checkoutAfter, checkoutUntil, last, pageable, descending) -> descending
+                ? reservationRepository.findGuestPageDescending(username, checkoutAfter, checkoutUntil, last.getCheckinDate(), last.getId(), pageable)
+                : reservationRepository.findGuestPageAscending(username, checkoutAfter, checkoutUntil, last.getCheckinDate(), last.getId(), pageable));
         // return reservationRepository.findByGuest(new User.Builder().setUsername(username).build()); => 不好。因为new出来的user不是全面的。User除了username意外还有password和其他field。这个user其他属性都没有填好。目前代码只是创建完马上调用username，但是以后别人可能拿着这个user去做其他操作的话，很容易mess up。不好的practice
     }
 
-    // This method retrieves a list of reservations associated with a particular stay ID using the reservationRepository.
-    public List<Reservation> listByStay(Long stayId) {
-         return reservationRepository.findByStay_Id(stayId);
+    // This method retrieves one page of the reservations associated with a particular stay ID using the reservationRepository.
+    public ReservationPage listByStay(Long stayId, ReservationStatus status, int pageSize, String cursor) {
+        return page(status, pageSize, cursor, (checkoutAfter, checkoutUntil, last, pageable, descending) -> descending
+                ? reservationRepository.findStayPageDescending(stayId, checkoutAfter, checkoutUntil, last.getCheckinDate(), last.getId(), pageable)
+                : reservationRepository.findStayPageAscending(stayId, checkoutAfter, checkoutUntil, last.getCheckinDate(), last.getId(), pageable));
 //        return reservationRepository.findByStay(new Stay.Builder().setId(stayId).build());
     }
 
-    // This method is used to add a new reservation. It checks for any collision with existing reservations using the
-    // stayReservationDateRepository, and if no collisions are found, it saves the reservation and updates the stay reservation dates accordingly.
-    @Transactional
-    public void add(Reservation reservation) throws ReservationCollisionException {
-        Set<Long> stayIds = stayReservationDateRepository.findByIdInAndDateBetween(      // 3个arguments传进去
-                List.of(reservation.getStay().getId()),        // id construct成一个list 因为在StayReservationDateRepository里面stayIds是一个list
-                reservation.getCheckinDate(),            // reservation的check in 和check out也要传进去
-                reservation.getCheckoutDate().minusDays(1)    // minusDays意思就是说check in和 check out可以同一天
-        );
-        if (!stayIds.isEmpty()) {
-            throw new ReservationCollisionException("Duplicate reservation");
+    /*Keyset (seek) pagination on (checkin_date, id): each page continues strictly after the last row of the previous one, so
+    page 100 costs the same as page 1 and a reservation added meanwhile never shifts rows between pages. One extra row is
+    fetched to know whether there is a next page. Past reservations are listed most recent first, the others soonest first.*/
+    private ReservationPage page(ReservationStatus status, int pageSize, String cursor, PageQuery query) {
+        LocalDate today = LocalDate.now();
+        boolean descending = status == ReservationStatus.PAST;
+        LocalDate checkoutAfter = status == ReservationStatus.UPCOMING ? today : MIN_DATE;
+        LocalDate checkoutUntil = status == ReservationStatus.PAST ? today : MAX_DATE;
+        ReservationSummary last = cursor != null && !cursor.isEmpty() ? ReservationCursorUtil.decode(cursor)
+                : descending ? new ReservationSummary(Long.MAX_VALUE, MAX_DATE, null, null, null, null)
+                : new ReservationSummary(Long.MIN_VALUE, MIN_DATE, null, null, null, null);
+
+        List<ReservationSummary> rows = query.fetch(checkoutAfter, checkoutUntil, last, PageRequest.of(0, pageSize + 1), descending);
+        if (rows.size() <= pageSize) {
+            return new ReservationPage(rows, null);
+        }
+        List<ReservationSummary> page = rows.subList(0, pageSize);
+        return new ReservationPage(page, ReservationCursorUtil.encode(page.get(pageSize - 1)));
+    }
+
+    private interface PageQuery {
+        List<ReservationSummary> fetch(LocalDate checkoutAfter, LocalDate checkoutUntil, ReservationSummary last, Pageable pageable, boolean descending);
+    }
+
+    // This method is used to add a new reservation. BookingAdmission rejects a collision with existing or in-flight reservations
+    // before any transaction is opened; if the nights are free, it saves the reservation and updates the stay reservation dates accordingly.
+    public void add(Reservation reservation) throws ReservationCollisionException, StayNotExistException {
+        add(reservation, bookingAdmission.admit(reservation.getStay().getId(), reservation.getCheckinDate(), reservation.getCheckoutDate()));
+    }
+
+    // saves a reservation whose nights the caller has already claimed (e.g. a confirmed hold). Releases the claim in any case
+    public void add(Reservation reservation, BookingAdmission.Claim claim) throws ReservationCollisionException, StayNotExistException {
+        try {
+            transactionTemplate.executeWithoutResult(status -> insert(reservation));
+        } catch (DataIntegrityViolationException e) {
+            String sqlState = sqlState(e);
+            if (DUPLICATE_KEY.equals(sqlState)) {
+                // another instance booked one of these nights first and the store rejected ours (e.g. the (stay_id, date) primary key of night storage)
+                throw new ReservationCollisionException("Duplicate reservation");
+            }
+            if (MISSING_REFERENCE.equals(sqlState)) {
+                throw new StayNotExistException("Stay doesn't exist");       // e.g. deleted between hold and confirm
+            }
+            throw e;
+        } finally {
+            claim.release();         // after commit, so the availability index already shows the nights as booked
+        }
+    }
+
+    // SQLSTATE of the rejected statement in the form H2 and the standard use; MySQL reports 23000 for every integrity violation,
+    // so its error codes 1062 (duplicate key) and 1452 (no referenced row) are mapped to the same two states
+    private static String sqlState(DataIntegrityViolationException e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLException) {
+                SQLException sqlException = (SQLException) cause;
+                switch (sqlException.getErrorCode()) {
+                    case 1062:
+                        return DUPLICATE_KEY;
+                    case 1452:
+                        return MISSING_REFERENCE;
+                    default:
+                        if (DUPLICATE_KEY.equals(sqlException.getSQLState()) || MISSING_REFERENCE.equals(sqlException.getSQLState())) {
+                            return sqlException.getSQLState();
+                        }
+                }
+            }
         }
+        return null;
+    }
 
-        List<StayReservedDate> reservedDates = new ArrayList<>();
+    private void insert(Reservation reservation) {
         LocalDate start = reservation.getCheckinDate();
         LocalDate end = reservation.getCheckoutDate();
-        for (LocalDate date = start; date.isBefore(end); date = date.plusDays(1)) {
-            StayReservedDateKey id = new StayReservedDateKey(reservation.getStay().getId(), date);    // stay reserved date is a composite key, therefore add two factors needed to build a key first
-            StayReservedDate reservedDate = new StayReservedDate(id, reservation.getStay());          // and add the key to the list
-            reservedDates.add(reservedDate);
-        }
-        stayReservationDateRepository.saveAll(reservedDates);
+        availabilityCalendarService.invalidate(reservation.getStay().getId());      // first, see there
+        reservedDateStore.reserve(reservation.getStay(), start, end);
         reservationRepository.save(reservation);
+        occupancyService.record(reservation.getStay().getId(), start, end, 1);
+        availabilityIndex.reserve(reservation.getStay().getId(), start, end);
+        outboxService.publish(OutboxEventType.RESERVATION_ADDED, reservation.getStay().getId());     // booked ranges in the location index
     }
 
     // This method is used to delete a reservation. It retrieves the reservation using the reservationRepository and username, then deletes the reservation and updates the stay reservation dates
@@ -75,9 +159,11 @@ public class ReservationService {
         }
         LocalDate start = reservation.getCheckinDate();
         LocalDate end = reservation.getCheckoutDate();
-        for (LocalDate date = start; date.isBefore(end); date = date.plusDays(1)) {
-            stayReservationDateRepository.deleteById(new StayReservedDateKey(reservation.getStay().getId(), date));
-        }
-        reservationRepository.deleteById(reservationId);
+        availabilityCalendarService.invalidate(reservation.getStay().getId());
+        reservedDateStore.release(reservation.getStay().getId(), start, end);
+        reservationRepository.delete(reservation);      // already loaded, so no second SELECT as with deleteById
+        occupancyService.record(reservation.getStay().getId(), start, end, -1);
+        availabilityIndex.release(reservation.getStay().getId(), start, end);
+        outboxService.publish(OutboxEventType.RESERVATION_CANCELLED, reservation.getStay().getId());
     }
 }
@@ -0,0 +1,119 @@
+package com.laioffer.staybooking.service;
+
+import com.laioffer.staybooking.repository.ArchivedStayReservedDateRepository;
+import com.laioffer.staybooking.repository.StayReservationDateRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import java.time.LocalDate;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/*Moves booked nights older than reservation.archive.horizon-days from stay_reserved_date to stay_reserved_date_archive, so the hot
+table only holds the nights search, collision checks and the availability index can ask about (all of them query from today on).
+
+Each batch copies and deletes the oldest reservation.archive.batch-size nights in one short transaction, so locks are held
+briefly and a crash leaves every night in exactly one of the tables. Between batches the job sleeps at least as long as the batch
+took (and at least reservation.archive.pause-ms), so it never takes more than half of the database's time away from requests.
+Rows moved and time per batch are published as reservation.archive.rows and reservation.archive.batch.
+
+Only night storage has a stay_reserved_date to compact; interval storage keeps one row per booking.*/
+@Component
+@ConditionalOnProperty(name = "reservation.storage", havingValue = "nights", matchIfMissing = true)
+public class ReservedDateArchiver {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReservedDateArchiver.class);
+
+    private static final long INITIAL_DELAY_MINUTES = 5;
+
+    private final StayReservationDateRepository stayReservationDateRepository;
+    private final ArchivedStayReservedDateRepository archivedStayReservedDateRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ScheduledExecutorService executor;
+    private final Counter rowsMoved;
+    private final Timer batchTime;
+
+    @Value("${reservation.archive.enabled:true}")
+    private boolean enabled;
+
+    @Value("${reservation.archive.horizon-days:30}")
+    private int horizonDays;
+
+    @Value("${reservation.archive.batch-size:5000}")
+    private int batchSize;
+
+    @Value("${reservation.archive.pause-ms:100}")
+    private long pauseMs;
+
+    @Value("${reservation.archive.interval-minutes:1440}")
+    private long intervalMinutes;
+
+    public ReservedDateArchiver(StayReservationDateRepository stayReservationDateRepository, ArchivedStayReservedDateRepository archivedStayReservedDateRepository,
+                                PlatformTransactionManager transactionManager, @Qualifier("archiveExecutor") ScheduledExecutorService executor, MeterRegistry meterRegistry) {
+        this.stayReservationDateRepository = stayReservationDateRepository;
+        this.archivedStayReservedDateRepository = archivedStayReservedDateRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.executor = executor;
+        this.rowsMoved = meterRegistry.counter("reservation.archive.rows");
+        this.batchTime = meterRegistry.timer("reservation.archive.batch");
+    }
+
+    @PostConstruct
+    public void start() {
+        if (enabled) {
+            executor.scheduleWithFixedDelay(this::archiveSafely, INITIAL_DELAY_MINUTES, intervalMinutes, TimeUnit.MINUTES);
+        }
+    }
+
+    // a scheduled task that throws is never run again, so nothing may escape
+    private void archiveSafely() {
+        try {
+            archive();
+        } catch (RuntimeException e) {
+            logger.warn("Archiving reserved dates failed, retrying in {} minutes", intervalMinutes, e);
+        }
+    }
+
+    // returns the number of nights moved
+    public long archive() {
+        LocalDate before = LocalDate.now().minusDays(horizonDays);
+        long started = System.nanoTime();
+        long total = 0;
+        int batches = 0;
+        while (true) {
+            long batchStarted = System.nanoTime();
+            Integer moved = transactionTemplate.execute(status -> {
+                archivedStayReservedDateRepository.copyBatchBefore(before, batchSize);
+                return stayReservationDateRepository.deleteBatchBefore(before, batchSize);
+            });
+            long batchNanos = System.nanoTime() - batchStarted;
+            batchTime.record(batchNanos, TimeUnit.NANOSECONDS);
+            rowsMoved.increment(moved);
+            total += moved;
+            batches++;
+            logger.debug("Archived {} reserved nights in {} ms", moved, TimeUnit.NANOSECONDS.toMillis(batchNanos));
+            if (moved < batchSize) {
+                break;
+            }
+            try {
+                Thread.sleep(Math.max(pauseMs, TimeUnit.NANOSECONDS.toMillis(batchNanos)));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();         // shutting down, the next run continues where this one stopped
+                break;
+            }
+        }
+        logger.info("Archived {} reserved nights before {} in {} batches, {} ms", total, before, batches,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        return total;
+    }
+}
@@ -0,0 +1,36 @@
+package com.laioffer.staybooking.service;
+
+import com.laioffer.staybooking.exception.ReservationCollisionException;
+import com.laioffer.staybooking.model.BookedRange;
+import com.laioffer.staybooking.model.Stay;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+
+/*Where booked nights are persisted, selected with reservation.storage:
+- nights (default): one stay_reserved_date row per night, see NightRowReservedDateStore.
+- intervals: one stay_reserved_interval row per booking, see IntervalReservedDateStore.
+Every date range is [checkin, checkout). The write methods must run inside the caller's transaction.*/
+public interface ReservedDateStore {
+
+    // throws ReservationCollisionException if the store itself detects that a night is already booked
+    void reserve(Stay stay, LocalDate checkinDate, LocalDate checkoutDate) throws ReservationCollisionException;
+
+    void release(Long stayId, LocalDate checkinDate, LocalDate checkoutDate);
+
+    void removeStay(Long stayId);
+
+    // every booked run that ends after fromDate, clipped to start no earlier than fromDate, e.g. to load the availability index
+    void forEachBookedRun(LocalDate fromDate, BookedRunConsumer consumer);
+
+    // the stays among stayIds with at least one booked night in [checkinDate, checkoutDate)
+    Collection<Long> findReservedStayIds(List<Long> stayIds, LocalDate checkinDate, LocalDate checkoutDate);
+
+    // booked runs of one stay inside [from, to), sorted and clipped to the range
+    List<BookedRange> bookedRanges(Long stayId, LocalDate from, LocalDate to);
+
+    interface BookedRunConsumer {
+        void accept(Long stayId, LocalDate checkinDate, LocalDate checkoutDate);
+    }
+}
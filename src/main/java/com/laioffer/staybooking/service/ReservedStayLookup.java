@@ -0,0 +1,83 @@
+package com.laioffer.staybooking.service;
+
+import com.laioffer.staybooking.util.LongHashSet;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+
+/*Asks the ReservedDateStore (MySQL) which of a (possibly large) list of stays have any booked night in [checkin, checkout), for availability.source=database.
+
+Instead of one IN (...) with thousands of ids, whose arity changes with every search (so MySQL plans it each time and no
+prepared statement is ever reused), the ids are split into chunks of at most chunk-size ids. Every chunk is padded, by
+repeating its last id, to the next power of two, so only log2(chunk-size) statement shapes exist at all. The chunks run
+concurrently on the availabilityLookupExecutor pool and their results are merged into one LongHashSet.*/
+@Component
+public class ReservedStayLookup {
+
+    private final ReservedDateStore reservedDateStore;
+    private final ExecutorService executor;
+
+    @Value("${availability.lookup.chunk-size:512}")     // rounded up to a power of two
+    private int chunkSize;
+
+    public ReservedStayLookup(ReservedDateStore reservedDateStore,
+                              @Qualifier("availabilityLookupExecutor") ExecutorService executor) {
+        this.reservedDateStore = reservedDateStore;
+        this.executor = executor;
+    }
+
+    // ids of the given stays that are booked on at least one night in [checkinDate, checkoutDate)
+    public LongHashSet findReserved(long[] stayIds, LocalDate checkinDate, LocalDate checkoutDate) {
+        int maxChunk = nextPowerOfTwo(chunkSize);
+        if (stayIds.length <= maxChunk) {
+            return query(stayIds, 0, stayIds.length, checkinDate, checkoutDate);      // one chunk, no need for another thread
+        }
+        List<CompletableFuture<LongHashSet>> chunks = new ArrayList<>();
+        for (int from = 0; from < stayIds.length; from += maxChunk) {
+            int start = from;
+            int end = Math.min(from + maxChunk, stayIds.length);
+            chunks.add(CompletableFuture.supplyAsync(() -> query(stayIds, start, end, checkinDate, checkoutDate), executor));
+        }
+        LongHashSet reserved = new LongHashSet();
+        try {
+            for (CompletableFuture<LongHashSet> chunk : chunks) {
+                reserved.addAll(chunk.join());
+            }
+        } catch (CompletionException e) {
+            chunks.forEach(chunk -> chunk.cancel(false));
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+        }
+        return reserved;
+    }
+
+    private LongHashSet query(long[] stayIds, int from, int to, LocalDate checkinDate, LocalDate checkoutDate) {
+        if (from == to) {
+            return new LongHashSet();
+        }
+        int padded = nextPowerOfTwo(to - from);
+        List<Long> ids = new ArrayList<>(padded);
+        for (int i = from; i < to; i++) {
+            ids.add(stayIds[i]);
+        }
+        Long last = stayIds[to - 1];
+        while (ids.size() < padded) {
+            ids.add(last);           // a repeated id does not change the result, only the number of placeholders
+        }
+        LongHashSet reserved = new LongHashSet(padded);
+        for (Long stayId : reservedDateStore.findReservedStayIds(ids, checkinDate, checkoutDate)) {
+            reserved.add(stayId);
+        }
+        return reserved;
+    }
+
+    private static int nextPowerOfTwo(int n) {
+        return n <= 1 ? 1 : Integer.highestOneBit(n - 1) << 1;
+    }
+}
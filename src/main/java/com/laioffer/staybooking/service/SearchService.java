@@ -1,17 +1,31 @@
 package com.laioffer.staybooking.service;
 
 
-import com.laioffer.staybooking.model.Stay;
-import com.laioffer.staybooking.repository.LocationRepository;
+import com.laioffer.staybooking.model.FlexibleStayMatch;
+import com.laioffer.staybooking.model.LocationHit;
+import com.laioffer.staybooking.model.SearchPage;
+import com.laioffer.staybooking.model.StaySummary;
 import com.laioffer.staybooking.repository.StayRepository;
-import com.laioffer.staybooking.repository.StayReservationDateRepository;
+import com.laioffer.staybooking.util.GeoUtil;
+import com.laioffer.staybooking.util.LongHashSet;
+import com.laioffer.staybooking.util.SearchCursorUtil;
+import com.laioffer.staybooking.util.SingleFlight;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 /*
@@ -21,33 +35,156 @@ check-out dates, and location. The service interacts with different repositories
 @Service
 public class SearchService {
     private final StayRepository stayRepository;
-    private final StayReservationDateRepository stayReservationDateRepository;
-    private final LocationRepository locationRepository;
+    private final GeoSearchCache geoSearchCache;
+    private final AvailabilityIndex availabilityIndex;
+    private final ReservedStayLookup reservedStayLookup;
+    private final BookingAdmission bookingAdmission;
 
+    // index: recheck hits against the in-memory AvailabilityIndex. database: recheck them against stay_reserved_date,
+    // e.g. when several instances serve traffic and one JVM's index does not see bookings made through the others
+    @Value("${availability.source:index}")
+    private String availabilitySource;
 
-    public SearchService(StayRepository stayRepository, StayReservationDateRepository stayReservationDateRepository, LocationRepository locationRepository) {
+    @Value("${availability.lookup.batch-size:2000}")     // hits checked per database round, split into chunks by ReservedStayLookup
+    private int databaseBatchSize;
+
+    // identical searches that arrive together (e.g. right after a marketing email) share one computation
+    private final SingleFlight<SearchKey, SearchPage<StaySummary>> singleFlight = new SingleFlight<>();
+    private final SingleFlight<SearchKey, SearchPage<FlexibleStayMatch>> flexibleSingleFlight = new SingleFlight<>();
+
+
+    public SearchService(StayRepository stayRepository, GeoSearchCache geoSearchCache, AvailabilityIndex availabilityIndex, ReservedStayLookup reservedStayLookup, BookingAdmission bookingAdmission, MeterRegistry meterRegistry) {
         this.stayRepository = stayRepository;
-        this.stayReservationDateRepository = stayReservationDateRepository;
-        this.locationRepository = locationRepository;
+        this.geoSearchCache = geoSearchCache;
+        this.availabilityIndex = availabilityIndex;
+        this.reservedStayLookup = reservedStayLookup;
+        this.bookingAdmission = bookingAdmission;
+        FunctionCounter.builder("search.coalesced", singleFlight, SingleFlight::collapsed)
+                .description("searches answered by an identical search already in flight")
+                .tag("mode", "fixed")
+                .register(meterRegistry);
+        FunctionCounter.builder("search.coalesced", flexibleSingleFlight, SingleFlight::collapsed)
+                .description("searches answered by an identical search already in flight")
+                .tag("mode", "flexible")
+                .register(meterRegistry);
+        Gauge.builder("search.in.flight", singleFlight, SingleFlight::inFlight).tag("mode", "fixed").register(meterRegistry);
+        Gauge.builder("search.in.flight", flexibleSingleFlight, SingleFlight::inFlight).tag("mode", "flexible").register(meterRegistry);
+    }
+
+    public SearchPage<StaySummary> search(int guestNumber, LocalDate checkinDate, LocalDate checkoutDate, double lat, double lon, String distance, int pageSize, String cursor) {
+        SearchKey key = SearchKey.of(guestNumber, checkinDate, checkoutDate, 0, lat, lon, distance, pageSize, cursor);
+        return singleFlight.execute(key, () -> doSearch(guestNumber, checkinDate, checkoutDate, lat, lon, key.distance(), pageSize, cursor));
+    }
+
+    /*Flexible dates: stays with nights consecutive free nights somewhere in [windowStart, windowEnd), each with its earliest such run.
+    Candidates come from the same geo step without a date filter, and each one is checked with a single scan over its booked runs
+    in the availability index (AvailabilityIndex.earliestFreeRun), instead of one search per possible checkin date.
+    This always uses the in-memory index, also with availability.source=database.*/
+    public SearchPage<FlexibleStayMatch> searchFlexible(int guestNumber, LocalDate windowStart, LocalDate windowEnd, int nights, double lat, double lon, String distance, int pageSize, String cursor) {
+        SearchKey key = SearchKey.of(guestNumber, windowStart, windowEnd, nights, lat, lon, distance, pageSize, cursor);
+        return flexibleSingleFlight.execute(key, () -> {
+            Map<Long, LocalDate> checkinDates = new HashMap<>();
+            Page page = scan(guestNumber, null, null, lat, lon, key.distance(), pageSize, pageSize, cursor, hits -> hit -> {
+                LocalDate checkinDate = availabilityIndex.earliestFreeRun(hit.getId(), windowStart, windowEnd, nights);
+                // skip past held (or just being booked) nights and look for the next free run after them
+                long claimedUntil;
+                while (checkinDate != null && (claimedUntil = bookingAdmission.claimedUntil(hit.getId(), checkinDate, checkinDate.plusDays(nights))) >= 0) {
+                    checkinDate = availabilityIndex.earliestFreeRun(hit.getId(), LocalDate.ofEpochDay(claimedUntil), windowEnd, nights);
+                }
+                if (checkinDate != null) {
+                    checkinDates.put(hit.getId(), checkinDate);
+                }
+                return checkinDate != null;
+            });
+            List<FlexibleStayMatch> matches = loadSummaries(page.ids()).stream()
+                    .map(stay -> new FlexibleStayMatch(stay, checkinDates.get(stay.getId()), checkinDates.get(stay.getId()).plusDays(nights)))
+                    .collect(Collectors.toList());
+            return new SearchPage<>(matches, page.nextCursor());
+        });
+    }
+
+    /*Returns one page of available stays ordered by distance. The geo cache (or, when it is disabled, a single Elasticsearch query)
+    already filters distance, capacity and booked dates, but Elasticsearch only sees a booking after its refresh interval,
+    so every batch is rechecked against the in-memory availability index (or MySQL, with availability.source=database).*/
+    private SearchPage<StaySummary> doSearch(int guestNumber, LocalDate checkinDate, LocalDate checkoutDate, double lat, double lon, String distance, int pageSize, String cursor) {
+        boolean checkDatabase = "database".equals(availabilitySource);
+        // a database round trip costs much more than an index lookup, so check many hits per round
+        int batchSize = checkDatabase ? Math.max(pageSize, databaseBatchSize) : pageSize;
+        Page page = scan(guestNumber, checkinDate, checkoutDate, lat, lon, distance, pageSize, batchSize, cursor, hits -> {
+            if (checkDatabase) {
+                LongHashSet reserved = reservedStayLookup.findReserved(ids(hits), checkinDate, checkoutDate);
+                return hit -> !reserved.contains(hit.getId()) && !bookingAdmission.isClaimed(hit.getId(), checkinDate, checkoutDate);
+            }
+            // held nights (ReservationHoldService) are not booked yet but can't be booked by anyone else either
+            return hit -> availabilityIndex.isAvailable(hit.getId(), checkinDate, checkoutDate) && !bookingAdmission.isClaimed(hit.getId(), checkinDate, checkoutDate);
+        });
+        return new SearchPage<>(loadSummaries(page.ids()), page.nextCursor());
+    }
+
+    /*Pages through the geo hits after cursor, batchSize at a time, until pageSize of them pass the filter that batchFilter builds
+    for each batch. When the filter drops hits, the next batch is fetched with search_after until the page is full or the results
+    run out, so a page never holds more than pageSize stays no matter how many stays are inside the radius.*/
+    private Page scan(int guestNumber, LocalDate checkinDate, LocalDate checkoutDate, double lat, double lon, String distance,
+                      int pageSize, int batchSize, String cursor, Function<List<LocationHit>, Predicate<LocationHit>> batchFilter) {
+        LocationHit searchAfter = cursor == null || cursor.isEmpty() ? null : SearchCursorUtil.decode(cursor);
+        List<Long> pageIds = new ArrayList<>();
+        boolean exhausted = false;
+        while (pageIds.size() < pageSize && !exhausted) {
+            List<LocationHit> hits = geoSearchCache.searchAvailable(lat, lon, distance, guestNumber, checkinDate, checkoutDate, searchAfter, batchSize);
+            exhausted = hits.size() < batchSize;
+            Predicate<LocationHit> filter = batchFilter.apply(hits);
+            for (LocationHit hit : hits) {
+                if (pageIds.size() == pageSize) {
+                    exhausted = false;          // page filled before the end of this batch, so there is more to come
+                    break;
+                }
+                searchAfter = hit;
+                if (filter.test(hit)) {
+                    pageIds.add(hit.getId());
+                }
+            }
+        }
+        return new Page(pageIds, exhausted ? null : SearchCursorUtil.encode(searchAfter));
     }
 
-    public List<Stay> search(int guestNumber, LocalDate checkinDate, LocalDate checkoutDate, double lat, double lon, String distance) {
-        List<Long> stayIds = locationRepository.searchByDistance(lat, lon, distance);
-        if (stayIds == null || stayIds.isEmpty()) {
-            return Collections.emptyList();      // return了一个大家都用的empty list。这个用法是memory efficient， 而且外面得到结果往里面加的话，throw exception，因为这个api是immutable的只能读不能改
+    private List<StaySummary> loadSummaries(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return Collections.emptyList();      // Collections.emptyList()是一个大家都用的empty list, memory efficient
+        }
+        // findSummariesByIdIn does not keep the order of the ids, so put the stays back in distance order
+        Map<Long, StaySummary> staysById = stayRepository.findSummariesByIdIn(ids).stream()
+                .collect(Collectors.toMap(StaySummary::getId, Function.identity()));
+        return ids.stream()
+                .map(staysById::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
+    private static long[] ids(List<LocationHit> hits) {
+        long[] ids = new long[hits.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = hits.get(i).getId();
+        }
+        return ids;
+    }
+
+    private record Page(List<Long> ids, String nextCursor) {
+    }
+
+    // nights is 0 for fixed dates, where the two dates are checkin and checkout rather than a window
+    private record SearchKey(int guestNumber, LocalDate from, LocalDate to, int nights, double lat, double lon,
+                             double distanceKm, int pageSize, String cursor) {
+
+        // normalized so that e.g. an omitted distance, distance=50 and distance=50km are the same search. Rejects a distance that
+        // does not parse before anything else runs, whether or not the geo cache is enabled
+        static SearchKey of(int guestNumber, LocalDate from, LocalDate to, int nights, double lat, double lon, String distance, int pageSize, String cursor) {
+            return new SearchKey(guestNumber, from, to, nights, lat, lon, GeoUtil.parseDistanceKm(distance),
+                    pageSize, cursor == null || cursor.isEmpty() ? null : cursor);
+        }
+
+        // the distance in plain kilometers, which every location repository reads the same way
+        String distance() {
+            return String.valueOf(distanceKm);
         }
-        Set<Long> reservedStayIds = stayReservationDateRepository.findByIdInAndDateBetween(stayIds, checkinDate, checkoutDate.minusDays(1));
-        List<Long> filteredStayIds = stayIds.stream()                   // 把stayIds变成一个stream
-                .filter(stayId -> !reservedStayIds.contains(stayId))    // 先filter一遍，怎么filter呢？必须不能在stayId里面出现过
-                .collect(Collectors.toList());                          //
-        /*上一行的frequent API也可以写成，
-        * List<Long> filteredStayIds = new ArrayList<>();
-        * for (Long stayId : stayIds) {
-        *   if (!reservationStayIds.contains(stayId) {
-        *       filteredStayIds.add(stayId);
-        *   }
-        * }
-        * */
-        return stayRepository.findByIdInAndGuestNumberGreaterThanEqual(filteredStayIds, guestNumber);
     }
 }
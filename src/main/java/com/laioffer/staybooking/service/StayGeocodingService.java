@@ -0,0 +1,174 @@
+package com.laioffer.staybooking.service;
+
+import com.laioffer.staybooking.exception.InvalidStayAddressException;
+import com.laioffer.staybooking.model.Location;
+import com.laioffer.staybooking.model.OutboxEventType;
+import com.laioffer.staybooking.model.StayIndexStatus;
+import com.laioffer.staybooking.repository.StayRepository;
+import com.laioffer.staybooking.util.TransactionUtil;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/*Second stage of stay creation. StayService.add only inserts the stay as PENDING; this service geocodes its address with Google
+outside of any transaction and then, in one short transaction, stores the coordinates, moves the stay to INDEXING and publishes
+STAY_ADDED to the outbox. LocationIndexConsumer indexes it and marks it INDEXED. A slow geocoder therefore only delays indexing
+and never holds a database connection.
+
+The queue is the stay table itself (index_status = PENDING), so pending stays survive a restart. A single thread drains it in
+batches of stay.geocode.batch-size, woken after every stay creation commits and polling every stay.geocode.poll-interval-ms;
+the stays of a batch are geocoded stay.geocode.concurrency at a time, which keeps bulk imports fast without exceeding
+Google's rate limit.
+A failed call is retried with exponential backoff starting at stay.geocode.retry-base-seconds, up to stay.geocode.max-attempts
+attempts; an address Google cannot match exactly fails at once. Outcomes are counted in stay.geocode{result=...}.
+Like the outbox dispatcher this assumes a single application instance.*/
+@Service
+public class StayGeocodingService {
+
+    private static final Logger logger = LoggerFactory.getLogger(StayGeocodingService.class);
+
+    private static final long MAX_RETRY_DELAY_SECONDS = TimeUnit.HOURS.toSeconds(1);
+
+    private final StayRepository stayRepository;
+    private final GeoCodingService geoCodingService;
+    private final OutboxService outboxService;
+    private final TransactionTemplate transactionTemplate;
+    private final ScheduledExecutorService executor;
+    private final ExecutorService lookupExecutor;
+    private final AtomicBoolean drainQueued = new AtomicBoolean();
+    private final Counter geocoded;
+    private final Counter retried;
+    private final Counter failed;
+
+    @Value("${stay.geocode.batch-size:50}")
+    private int batchSize;
+
+    @Value("${stay.geocode.poll-interval-ms:5000}")
+    private long pollIntervalMs;
+
+    @Value("${stay.geocode.max-attempts:8}")
+    private int maxAttempts;
+
+    @Value("${stay.geocode.retry-base-seconds:10}")
+    private long retryBaseSeconds;
+
+    public StayGeocodingService(StayRepository stayRepository, GeoCodingService geoCodingService, OutboxService outboxService,
+                                PlatformTransactionManager transactionManager, @Qualifier("geocodeExecutor") ScheduledExecutorService executor,
+                                @Qualifier("geocodeLookupExecutor") ExecutorService lookupExecutor, MeterRegistry meterRegistry) {
+        this.stayRepository = stayRepository;
+        this.geoCodingService = geoCodingService;
+        this.outboxService = outboxService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.executor = executor;
+        this.lookupExecutor = lookupExecutor;
+        this.geocoded = meterRegistry.counter("stay.geocode", "result", "geocoded");
+        this.retried = meterRegistry.counter("stay.geocode", "result", "retry");
+        this.failed = meterRegistry.counter("stay.geocode", "result", "failed");
+    }
+
+    @PostConstruct
+    public void start() {
+        executor.scheduleWithFixedDelay(this::drainSafely, pollIntervalMs, pollIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    // must be called inside the transaction that inserts the PENDING stay
+    public void requested() {
+        TransactionUtil.afterCommit(this::wake);
+    }
+
+    private void wake() {
+        if (drainQueued.compareAndSet(false, true)) {
+            executor.execute(this::drainSafely);
+        }
+    }
+
+    // a scheduled task that throws is never run again, so nothing may escape
+    private void drainSafely() {
+        drainQueued.set(false);
+        try {
+            drain();
+        } catch (RuntimeException e) {
+            logger.warn("Geocoding pending stays failed, retrying in {} ms", pollIntervalMs, e);
+        }
+    }
+
+    // every stay of a batch leaves the due set (geocoded, failed or rescheduled), so each round fetches new ones.
+    // A stay whose outcome could not be saved would be fetched again, so such a round ends the drain until the next poll
+    private void drain() {
+        List<Object[]> batch;
+        do {
+            batch = stayRepository.findGeocodeDue(StayIndexStatus.PENDING, Instant.now(), PageRequest.of(0, batchSize));
+            List<Callable<Void>> lookups = new ArrayList<>(batch.size());
+            for (Object[] row : batch) {
+                lookups.add(() -> {
+                    geocode((Long) row[0], (String) row[1], (Integer) row[2]);
+                    return null;
+                });
+            }
+            try {
+                for (Future<Void> lookup : lookupExecutor.invokeAll(lookups)) {
+                    lookup.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();        // shutting down, pending stays are picked up after the restart
+                return;
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Saving a geocoding result failed", e.getCause());
+            }
+        } while (batch.size() == batchSize);
+    }
+
+    private void geocode(Long stayId, String address, int attempts) {
+        Location location;
+        try {
+            location = geoCodingService.getLatLng(stayId, address);
+        } catch (InvalidStayAddressException e) {
+            stayRepository.recordGeocodeAttemptIfStatus(stayId, StayIndexStatus.PENDING, attempts + 1, null, StayIndexStatus.FAILED);
+            failed.increment();
+            return;
+        } catch (RuntimeException e) {
+            retryLater(stayId, attempts + 1);
+            return;
+        }
+        transactionTemplate.executeWithoutResult(status -> {
+            int updated = stayRepository.setCoordinatesIfStatus(stayId, location.getGeoPoint().getLat(), location.getGeoPoint().getLon(),
+                    StayIndexStatus.PENDING, StayIndexStatus.INDEXING);
+            if (updated == 1) {     // 0: deleted while we were geocoding
+                outboxService.publish(OutboxEventType.STAY_ADDED, stayId);    // 连到elastic search的index里面, see LocationIndexConsumer
+            }
+        });
+        geocoded.increment();
+    }
+
+    private void retryLater(Long stayId, int attempts) {
+        if (attempts >= maxAttempts) {
+            logger.warn("Giving up geocoding stay {} after {} attempts", stayId, attempts);
+            stayRepository.recordGeocodeAttemptIfStatus(stayId, StayIndexStatus.PENDING, attempts, null, StayIndexStatus.FAILED);
+            failed.increment();
+            return;
+        }
+        long delaySeconds = Math.min(MAX_RETRY_DELAY_SECONDS, retryBaseSeconds << Math.min(attempts - 1, 20));
+        stayRepository.recordGeocodeAttemptIfStatus(stayId, StayIndexStatus.PENDING, attempts, Instant.now().plusSeconds(delaySeconds),
+                StayIndexStatus.PENDING);
+        retried.increment();
+    }
+}
@@ -0,0 +1,275 @@
+package com.laioffer.staybooking.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.laioffer.staybooking.model.Stay;
+import com.laioffer.staybooking.model.StayImportResult;
+import com.laioffer.staybooking.model.StayImportSummary;
+import com.laioffer.staybooking.model.User;
+import com.laioffer.staybooking.repository.StayRepository;
+import com.laioffer.staybooking.util.CsvReader;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/*Bulk import of stays (without images) for hosts with many units, from CSV with a header row or from JSON lines, with the
+fields name, address, description and guest_number.
+
+The input is read one record at a time and never held as a whole. Valid records are inserted import.batch-size at a time,
+each chunk in one transaction whose INSERTs Hibernate sends as JDBC batches (hibernate.jdbc.batch_size). Every stay starts
+PENDING like one added through POST /stays, so StayGeocodingService geocodes them with bounded concurrency and the outbox
+indexes them through bulk requests. The outcome of each record is handed to the caller as soon as its chunk commits.
+A rejected record does not stop the import: it is reported with its line and the error.*/
+@Service
+public class StayImportService {
+
+    private static final Logger logger = LoggerFactory.getLogger(StayImportService.class);
+
+    private static final int MAX_TEXT_LENGTH = 255;         // varchar(255) columns of stay
+
+    private final StayRepository stayRepository;
+    private final StayGeocodingService stayGeocodingService;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final Counter imported;
+    private final Counter rejected;
+
+    @Value("${import.batch-size:500}")
+    private int batchSize;
+
+    public StayImportService(StayRepository stayRepository, StayGeocodingService stayGeocodingService, ObjectMapper objectMapper,
+                             PlatformTransactionManager transactionManager, MeterRegistry meterRegistry) {
+        this.stayRepository = stayRepository;
+        this.stayGeocodingService = stayGeocodingService;
+        this.objectMapper = objectMapper;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.imported = meterRegistry.counter("stay.import.records", "result", "imported");
+        this.rejected = meterRegistry.counter("stay.import.records", "result", "rejected");
+    }
+
+    public StayImportSummary importCsv(String username, Reader input, Consumer<StayImportResult> results) throws IOException {
+        CsvReader csv = new CsvReader(new BufferedReader(input));
+        List<String> header;
+        try {
+            header = csv.next();
+        } catch (CsvReader.MalformedCsvException e) {
+            results.accept(StayImportResult.rejected(e.getLine(), e.getMessage()));
+            return new StayImportSummary(0, 1, 0);
+        }
+        if (header == null) {
+            return new StayImportSummary(0, 0, 0);
+        }
+        Map<String, Integer> columns = new HashMap<>();
+        for (int i = 0; i < header.size(); i++) {
+            columns.put(header.get(i).trim().toLowerCase(Locale.ROOT), i);
+        }
+        return importRecords(username, () -> {
+            List<String> fields;
+            try {
+                do {
+                    fields = csv.next();
+                } while (fields != null && fields.size() == 1 && fields.get(0).isBlank());       // empty lines
+            } catch (CsvReader.MalformedCsvException e) {
+                return new Record(e.getLine(), e.getMessage());        // the rest of the input is inside the quotes, so this is the last record
+            }
+            if (fields == null) {
+                return null;
+            }
+            if (fields.size() != header.size()) {
+                return new Record(csv.getRecordLine(), "Expected " + header.size() + " fields but found " + fields.size());
+            }
+            return new Record(csv.getRecordLine(), field(fields, columns, "name"), field(fields, columns, "address"),
+                    field(fields, columns, "description"), field(fields, columns, "guest_number"));
+        }, results);
+    }
+
+    public StayImportSummary importJsonLines(String username, Reader input, Consumer<StayImportResult> results) throws IOException {
+        BufferedReader lines = new BufferedReader(input);
+        int[] lineNumber = {0};
+        return importRecords(username, () -> {
+            String line;
+            do {
+                line = lines.readLine();
+                lineNumber[0]++;
+            } while (line != null && line.isBlank());
+            if (line == null) {
+                return null;
+            }
+            try {
+                JsonNode node = objectMapper.readTree(line);
+                if (!node.isObject()) {
+                    return new Record(lineNumber[0], "Expected a JSON object");
+                }
+                return new Record(lineNumber[0], text(node, "name"), text(node, "address"), text(node, "description"), text(node, "guest_number"));
+            } catch (JsonProcessingException e) {
+                return new Record(lineNumber[0], "Invalid JSON: " + e.getOriginalMessage());
+            }
+        }, results);
+    }
+
+    private StayImportSummary importRecords(String username, RecordSource source, Consumer<StayImportResult> results) throws IOException {
+        long started = System.nanoTime();
+        User host = new User.Builder().setUsername(username).build();
+        List<Record> chunk = new ArrayList<>(batchSize);
+        int importedCount = 0;
+        int rejectedCount = 0;
+        Record record;
+        while ((record = source.next()) != null) {
+            if (record.error == null) {
+                record.validate();
+            }
+            if (record.error != null) {
+                results.accept(StayImportResult.rejected(record.line, record.error));
+                rejectedCount++;
+                continue;
+            }
+            chunk.add(record);
+            if (chunk.size() == batchSize) {
+                int inserted = insert(host, chunk, results);
+                importedCount += inserted;
+                rejectedCount += chunk.size() - inserted;
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            int inserted = insert(host, chunk, results);
+            importedCount += inserted;
+            rejectedCount += chunk.size() - inserted;
+        }
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+        logger.info("Imported {} stays for {} ({} rejected) in {} ms", importedCount, username, rejectedCount, elapsedMs);
+        return new StayImportSummary(importedCount, rejectedCount, elapsedMs);
+    }
+
+    // inserts one chunk in one transaction and reports each of its records, returns the number of stays inserted. If the chunk
+    // fails, its records are retried one transaction each, so only the records that fail on their own are rejected
+    private int insert(User host, List<Record> chunk, Consumer<StayImportResult> results) {
+        List<Stay> stays = save(host, chunk);
+        if (stays == null) {
+            logger.warn("Importing a chunk of {} stays failed, retrying them one at a time", chunk.size());
+            int inserted = 0;
+            for (Record record : chunk) {
+                inserted += insert(host, record, results);
+            }
+            return inserted;
+        }
+        for (int i = 0; i < chunk.size(); i++) {
+            results.accept(StayImportResult.imported(chunk.get(i).line, stays.get(i).getId()));
+        }
+        imported.increment(chunk.size());
+        return chunk.size();
+    }
+
+    private int insert(User host, Record record, Consumer<StayImportResult> results) {
+        List<Stay> stays = save(host, List.of(record));
+        if (stays == null) {
+            results.accept(StayImportResult.rejected(record.line, "Failed to save stay"));
+            rejected.increment();
+            return 0;
+        }
+        results.accept(StayImportResult.imported(record.line, stays.get(0).getId()));
+        imported.increment();
+        return 1;
+    }
+
+    // the saved stays in the order of records, or null if the transaction failed. New entities each time, since a rolled
+    // back save may have left ids on the previous ones
+    private List<Stay> save(User host, List<Record> records) {
+        List<Stay> stays = new ArrayList<>(records.size());
+        for (Record record : records) {
+            stays.add(new Stay.Builder()
+                    .setName(record.name)
+                    .setAddress(record.address)
+                    .setDescription(record.description)
+                    .setGuestNumber(record.guestNumber)
+                    .setHost(host)
+                    .build());
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                stayRepository.saveAll(stays);
+                stayGeocodingService.requested();
+            });
+            return stays;
+        } catch (DataAccessException e) {
+            logger.warn("Saving {} stays failed", records.size(), e);
+            return null;
+        }
+    }
+
+    private static String field(List<String> fields, Map<String, Integer> columns, String name) {
+        Integer index = columns.get(name);
+        return index == null ? null : fields.get(index);
+    }
+
+    private static String text(JsonNode node, String name) {
+        JsonNode value = node.get(name);
+        return value == null || value.isNull() ? null : value.asText();
+    }
+
+    @FunctionalInterface
+    private interface RecordSource {
+        // the next record, or null at the end of the input
+        Record next() throws IOException;
+    }
+
+    private static class Record {
+        final int line;
+        String name;
+        String address;
+        String description;
+        String guestNumberText;
+        int guestNumber;
+        String error;
+
+        Record(int line, String error) {
+            this.line = line;
+            this.error = error;
+        }
+
+        Record(int line, String name, String address, String description, String guestNumberText) {
+            this.line = line;
+            this.name = name == null ? null : name.trim();
+            this.address = address == null ? null : address.trim();
+            this.description = description == null ? "" : description.trim();
+            this.guestNumberText = guestNumberText;
+        }
+
+        void validate() {
+            if (name == null || name.isEmpty()) {
+                error = "Missing name";
+            } else if (address == null || address.isEmpty()) {
+                error = "Missing address";
+            } else if (name.length() > MAX_TEXT_LENGTH || address.length() > MAX_TEXT_LENGTH || description.length() > MAX_TEXT_LENGTH) {
+                error = "Name, address and description must be at most " + MAX_TEXT_LENGTH + " characters";
+            } else {
+                try {
+                    guestNumber = Integer.parseInt(guestNumberText == null ? "" : guestNumberText.trim());
+                    if (guestNumber < 1) {
+                        error = "guest_number must be at least 1";
+                    }
+                } catch (NumberFormatException e) {
+                    error = "Invalid guest_number";
+                }
+            }
+        }
+    }
+}
@@ -4,10 +4,11 @@ package com.laioffer.staybooking.service;
 import com.laioffer.staybooking.exception.StayDeleteException;
 import com.laioffer.staybooking.exception.StayNotExistException;
 import com.laioffer.staybooking.model.*;
-import com.laioffer.staybooking.repository.LocationRepository;
 import com.laioffer.staybooking.repository.ReservationRepository;
 import com.laioffer.staybooking.repository.StayRepository;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
 
@@ -25,24 +26,33 @@ public class StayService {
 
     private final ImageStorageService imageStorageService;
     private final StayRepository stayRepository;
-    private final GeoCodingService geoCodingService;
-    private final LocationRepository locationRepository;
+    private final StayGeocodingService stayGeocodingService;
     private final ReservationRepository reservationRepository;
+    private final ReservedDateStore reservedDateStore;
+    private final AvailabilityIndex availabilityIndex;
+    private final OccupancyService occupancyService;
+    private final OutboxService outboxService;
+    private final TransactionTemplate transactionTemplate;
 
-    public StayService(ImageStorageService imageStorageService, StayRepository stayRepository, GeoCodingService geoCodingService, LocationRepository locationRepository, ReservationRepository reservationRepository) {
+    public StayService(ImageStorageService imageStorageService, StayRepository stayRepository, StayGeocodingService stayGeocodingService, ReservationRepository reservationRepository, ReservedDateStore reservedDateStore, AvailabilityIndex availabilityIndex, OccupancyService occupancyService, OutboxService outboxService,
+                       PlatformTransactionManager transactionManager) {
         this.imageStorageService = imageStorageService;
         this.stayRepository = stayRepository;
-        this.geoCodingService = geoCodingService;
-        this.locationRepository = locationRepository;
+        this.stayGeocodingService = stayGeocodingService;
         this.reservationRepository = reservationRepository;
+        this.reservedDateStore = reservedDateStore;
+        this.availabilityIndex = availabilityIndex;
+        this.occupancyService = occupancyService;
+        this.outboxService = outboxService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
     }
 
     /*This method retrieves a list of stays associated with a specific user (host) based on the provided username.
     It uses the injected stayRepository to query the database. The method is useful for fetching stays that belong
     to a particular user for displaying or processing purposes.
     */
-    public List<Stay> listByUser(String username) {
-        return stayRepository.findByHost(new User.Builder().setUsername(username).build());
+    public List<StaySummary> listByUser(String username) {
+        return stayRepository.findSummariesByHost(new User.Builder().setUsername(username).build());
         // this method is querying the repository to find stays where the host matches the specified user.
         // returns the result of a query performed on a stayRepository.
     }
@@ -59,37 +69,43 @@ public class StayService {
 
     /*This method adds a new stay to the system. It accepts a Stay object and an array of MultipartFile images.
     It processes the images, saves them using the imageStorageService, and associates them with the stay as StayImage objects.
-    It then saves the stay using the stayRepository. Additionally, it uses the geoCodingService to retrieve and
-    save the location coordinates associated with the stay's address.*/
+    It then saves the stay using the stayRepository as PENDING; StayGeocodingService geocodes its address and gets it indexed
+    afterwards, and the host can follow that with indexState.*/
     // 为什么不把image直接存在database，而是先存在bucket，再存到database？SQL不适合存binary或者大数据。
     // 因为search不会很efficient，performance降低。假如一个column是图片的话，占很多内存。 任何不需要indexing的内容，
     // 我们直接用Amazon S3或者google cloud storage来存。
-    @Transactional
-    public void add(Stay stay, MultipartFile[] images) {
-        List<StayImage> stayImages = Arrays.stream(images)   // 把list先变成Java的一个Stream
+    // the uploads run before the transaction starts, so a slow GCS never holds a database connection
+    public StayIndexState add(Stay stay, MultipartFile[] images) {
+        List<MultipartFile> files = Arrays.stream(images)   // 把list先变成Java的一个Stream
                 .filter(image -> !image.isEmpty())    // corner case - image空了，就filter掉。什么都不做。
-                .parallel()                          // 创建多个线程，同时上传
-                .map(imageStorageService::save)      // 每个传进来的image，每次都存一次 can also be written as .map(image -> imageStorageService.save(image));
+                .collect(Collectors.toList());
+        List<StayImage> stayImages = imageStorageService.saveAll(files).stream()   // 在专门的upload线程池里同时上传，不占用common ForkJoinPool
                 .map(mediaLink -> new StayImage(mediaLink, stay))    // 每次存完每个file就有media link(以为url是field)
                 .collect(Collectors.toList());  // 把media link放到一个list里面
-                /* 跟上面的lambda写法是一模一样的意义。唯一不一样的就是，下面的for loop没带parallel()
-                List<String> mediaLinks2 = new ArrayList<>();
-                for (MultipartFile image : images) {
-                    mediaLinks2.add(imageStorageService.save(image));
-                }
-                但是上面的frequent API写法读起来很顺，很容易理解
-                */
-        // 存下来的时候需要 - 存照片，stay存了，把geolocation也要存。需要加@Transactional因为有好多个写的操作。
+        transactionTemplate.executeWithoutResult(status -> save(stay, stayImages));
+        return new StayIndexState(stay.getId(), StayIndexStatus.PENDING, 0);
+    }
+
+    private void save(Stay stay, List<StayImage> stayImages) {
+        // 存下来的时候需要 - 存照片，stay存了。好多个写的操作，所以放在一个transaction里。geolocation之后再异步存。
         stay.setImages(stayImages);
         stayRepository.save(stay);
+        stayGeocodingService.requested();    // Google geocoding can be slow, so it runs after commit without a DB connection
+    }
 
-        Location location = geoCodingService.getLatLng(stay.getId(), stay.getAddress()); //
-        locationRepository.save(location);   // 连到elastic search的index里面
+    // indexing progress of a stay created by add, for the host that owns it
+    public StayIndexState indexState(Long stayId, String username) throws StayNotExistException {
+        StayIndexState state = stayRepository.findIndexStateByIdAndHost(stayId, new User.Builder().setUsername(username).build());
+        if (state == null) {
+            throw new StayNotExistException("Stay doesn't exist");
+        }
+        return state;
     }
 
     /*This method is used to delete a stay. It verifies that the stay with the provided ID exists and is associated with
     the provided host username. It also checks if there are active reservations associated with the stay.
     If there are, a StayDeleteException is thrown. If all checks pass, the stay is deleted using the stayRepository.*/
+    @Transactional
     public void delete(Long stayId, String username) throws StayNotExistException, StayDeleteException {
         Stay stay = stayRepository.findByIdAndHost(stayId, new User.Builder().setUsername(username).build());
         if (stay == null) {
@@ -101,7 +117,11 @@ public class StayService {
         if (reservations != null && !reservations.isEmpty()) {
             throw new StayDeleteException("Cannot delete stay with active reservation");
         }
-        stayRepository.deleteById(stayId);
+        reservedDateStore.removeStay(stayId);    // one bulk DELETE instead of cascading to every reserved night
+        occupancyService.removeStay(stayId);
+        stayRepository.delete(stay);
+        outboxService.publish(OutboxEventType.STAY_DELETED, stayId);   // otherwise search keeps returning the id of a stay that no longer exists
+        availabilityIndex.remove(stayId);
     }
 }
 
@@ -0,0 +1,31 @@
+package com.laioffer.staybooking.util;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.Normalizer;
+import java.util.HexFormat;
+import java.util.Locale;
+
+/*Address keys for the geocoding cache. normalize() maps spellings that Google geocodes identically to the same string:
+"1 Main St., Apt #4" and " 1 main st apt #4" both become "1 main st apt #4". It only folds case, Unicode compatibility forms,
+punctuation and whitespace; it does not expand abbreviations, so "St" and "Street" stay different keys.*/
+public final class AddressUtil {
+
+    private AddressUtil() {
+    }
+
+    public static String normalize(String address) {
+        String folded = Normalizer.normalize(address, Normalizer.Form.NFKC).toLowerCase(Locale.ROOT);
+        return folded.replaceAll("[^\\p{L}\\p{N}#-]+", " ").trim();
+    }
+
+    // fixed length primary key for normalized addresses of any length
+    public static String hash(String normalizedAddress) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(normalizedAddress.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);        // every JVM ships SHA-256
+        }
+    }
+}
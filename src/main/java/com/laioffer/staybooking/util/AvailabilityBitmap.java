@@ -0,0 +1,143 @@
+package com.laioffer.staybooking.util;
+
+/*A compact bitmap of booked nights for one stay. Bit i of word w represents the night starting on epoch day (baseWord + w) * 64 + i,
+so a fully booked year costs 6 longs instead of 365 rows. All range arguments are half-open [fromDay, toDay), exactly like a
+reservation [checkin, checkout): the checkout day itself is never booked.
+
+Range checks and updates work on whole 64-bit words with masks instead of looping night by night.
+Instances are guarded by their own monitor, so one stay's bitmap can be read and written from several request threads.*/
+public class AvailabilityBitmap implements BookedNights {
+
+    private static final int WORD_BITS = 64;
+
+    private long baseWord;                 // word index (epoch day / 64) of words[0]
+    private long[] words = new long[0];
+
+    @Override
+    public synchronized void set(long fromDay, long toDay) {
+        if (fromDay >= toDay) {
+            return;
+        }
+        ensureCapacity(fromDay, toDay);
+        for (long word = Math.floorDiv(fromDay, WORD_BITS); word <= Math.floorDiv(toDay - 1, WORD_BITS); word++) {
+            words[(int) (word - baseWord)] |= mask(word, fromDay, toDay);
+        }
+    }
+
+    @Override
+    public synchronized void clear(long fromDay, long toDay) {
+        long first = Math.max(Math.floorDiv(fromDay, WORD_BITS), baseWord);
+        long last = Math.min(Math.floorDiv(toDay - 1, WORD_BITS), baseWord + words.length - 1);
+        for (long word = first; word <= last; word++) {
+            words[(int) (word - baseWord)] &= ~mask(word, fromDay, toDay);
+        }
+    }
+
+    @Override
+    public synchronized boolean anySet(long fromDay, long toDay) {
+        long first = Math.max(Math.floorDiv(fromDay, WORD_BITS), baseWord);
+        long last = Math.min(Math.floorDiv(toDay - 1, WORD_BITS), baseWord + words.length - 1);
+        for (long word = first; word <= last; word++) {
+            if ((words[(int) (word - baseWord)] & mask(word, fromDay, toDay)) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public synchronized void forEachRun(long fromDay, RunConsumer consumer) {
+        long runStart = nextSetBit(fromDay);
+        while (runStart >= 0) {
+            long runEnd = nextClearBit(runStart);
+            consumer.accept(runStart, runEnd);
+            runStart = nextSetBit(runEnd);
+        }
+    }
+
+    // first booked night at or after day, or -1 if there is none
+    public synchronized long nextSetBit(long day) {
+        long start = Math.max(day, baseWord * WORD_BITS);
+        int index = (int) (Math.floorDiv(start, WORD_BITS) - baseWord);
+        if (index >= words.length) {
+            return -1;
+        }
+        long bits = words[index] & (-1L << (start - (baseWord + index) * WORD_BITS));
+        while (bits == 0) {
+            if (++index == words.length) {
+                return -1;
+            }
+            bits = words[index];
+        }
+        return (baseWord + index) * WORD_BITS + Long.numberOfTrailingZeros(bits);
+    }
+
+    // first free night at or after day
+    public synchronized long nextClearBit(long day) {
+        int index = (int) (Math.floorDiv(day, WORD_BITS) - baseWord);
+        if (index < 0 || index >= words.length) {
+            return day;
+        }
+        long bits = ~words[index] & (-1L << (day - (baseWord + index) * WORD_BITS));
+        while (bits == 0) {
+            if (++index == words.length) {
+                return (baseWord + index) * WORD_BITS;
+            }
+            bits = ~words[index];
+        }
+        return (baseWord + index) * WORD_BITS + Long.numberOfTrailingZeros(bits);
+    }
+
+    // jumps from booked run to booked run instead of testing every candidate day, so it costs one step per booked run in the window
+    @Override
+    public synchronized long firstClearRun(long fromDay, long toDay, long length) {
+        long start = nextClearBit(fromDay);
+        while (start + length <= toDay) {
+            long booked = nextSetBit(start);
+            if (booked < 0 || booked >= start + length) {
+                return start;
+            }
+            start = nextClearBit(booked);
+        }
+        return -1;
+    }
+
+    public synchronized boolean isEmpty() {
+        for (long word : words) {
+            if (word != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // bits of the word covering [word * 64, word * 64 + 64) that fall inside [fromDay, toDay)
+    private static long mask(long word, long fromDay, long toDay) {
+        long wordStart = word * WORD_BITS;
+        int lo = (int) (Math.max(fromDay, wordStart) - wordStart);
+        int hi = (int) (Math.min(toDay, wordStart + WORD_BITS) - wordStart);
+        if (hi - lo == WORD_BITS) {
+            return -1L;
+        }
+        return ((1L << (hi - lo)) - 1) << lo;
+    }
+
+    private void ensureCapacity(long fromDay, long toDay) {
+        long firstWord = Math.floorDiv(fromDay, WORD_BITS);
+        long lastWord = Math.floorDiv(toDay - 1, WORD_BITS);
+        if (words.length == 0) {
+            baseWord = firstWord;
+            words = new long[(int) (lastWord - firstWord + 1)];
+            return;
+        }
+        long newBase = Math.min(baseWord, firstWord);
+        long newEnd = Math.max(baseWord + words.length - 1, lastWord);
+        if (newBase == baseWord && newEnd == baseWord + words.length - 1) {
+            return;
+        }
+        long[] grown = new long[(int) (newEnd - newBase + 1)];
+        System.arraycopy(words, 0, grown, (int) (baseWord - newBase), words.length);
+        baseWord = newBase;
+        words = grown;
+    }
+}
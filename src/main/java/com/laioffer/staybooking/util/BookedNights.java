@@ -0,0 +1,24 @@
+package com.laioffer.staybooking.util;
+
+/*The booked nights of one stay, by epoch day, as held by AvailabilityIndex. All ranges are half-open [fromDay, toDay), exactly like
+a reservation [checkin, checkout). Implementations must be safe to read and write from several request threads.
+AvailabilityBitmap suits night-by-night storage; IntervalSet suits interval storage (see ReservedDateStore).*/
+public interface BookedNights {
+
+    void set(long fromDay, long toDay);
+
+    void clear(long fromDay, long toDay);
+
+    // true if any night in [fromDay, toDay) is booked
+    boolean anySet(long fromDay, long toDay);
+
+    // calls consumer once per maximal run of booked nights [runStart, runEnd) at or after fromDay, in date order
+    void forEachRun(long fromDay, RunConsumer consumer);
+
+    // first day d with [d, d + length) free and inside [fromDay, toDay), or -1
+    long firstClearRun(long fromDay, long toDay, long length);
+
+    interface RunConsumer {
+        void accept(long fromDay, long toDay);
+    }
+}
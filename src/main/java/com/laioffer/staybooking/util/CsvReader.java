@@ -0,0 +1,104 @@
+package com.laioffer.staybooking.util;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/*Streaming reader of RFC 4180 CSV: comma separated fields, optionally in double quotes, "" for a quote inside quotes, and
+CRLF or LF line ends. Quoted fields may span lines. Only one record is held in memory at a time, so files of any size can be
+read; wrap the Reader in a BufferedReader. A quoted field still open at the end of the input is a MalformedCsvException, after
+which next() returns null.*/
+public class CsvReader {
+
+    private final Reader reader;
+    private int line = 1;              // line the next character is on
+    private int recordLine;
+    private int pending = -2;          // a character read ahead, -2 for none
+
+    public CsvReader(Reader reader) {
+        this.reader = reader;
+    }
+
+    // fields of the next record, or null at the end of the input
+    public List<String> next() throws IOException {
+        recordLine = line;
+        int c = read();
+        if (c == -1) {
+            return null;
+        }
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        while (true) {
+            if (quoted) {
+                if (c == -1) {
+                    throw new MalformedCsvException(recordLine, "Unterminated quoted field starting on line " + recordLine);
+                }
+                if (c == '"') {
+                    int after = read();
+                    if (after == '"') {
+                        field.append('"');
+                    } else {
+                        quoted = false;
+                        c = after;
+                        continue;
+                    }
+                } else {
+                    field.append((char) c);
+                }
+            } else if (c == '"' && field.length() == 0) {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\n' || c == -1) {
+                break;
+            } else if (c == '\r') {
+                int after = read();
+                if (after != '\n') {
+                    pending = after;        // a lone CR ends the line too
+                    line++;
+                }
+                break;
+            } else {
+                field.append((char) c);
+            }
+            c = read();
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    // line the record last returned by next() starts on, counting from 1
+    public int getRecordLine() {
+        return recordLine;
+    }
+
+    // the input is not valid CSV; the record starting on getLine() can't be read
+    public static class MalformedCsvException extends IOException {
+        private final int line;
+
+        public MalformedCsvException(int line, String message) {
+            super(message);
+            this.line = line;
+        }
+
+        public int getLine() {
+            return line;
+        }
+    }
+
+    private int read() throws IOException {
+        if (pending != -2) {
+            int c = pending;
+            pending = -2;
+            return c;
+        }
+        int c = reader.read();
+        if (c == '\n') {
+            line++;
+        }
+        return c;
+    }
+}
@@ -0,0 +1,113 @@
+package com.laioffer.staybooking.util;
+
+import com.laioffer.staybooking.exception.InvalidSearchDistanceException;
+import com.laioffer.staybooking.repository.CustomLocationRepository;
+import org.elasticsearch.common.unit.DistanceUnit;
+
+/*Small geo helpers for code that filters locations in the JVM instead of in Elasticsearch.
+Distances use the haversine formula with the same mean earth radius as Elasticsearch's arc distance,
+so a stay that ES puts inside a radius is also inside it here.*/
+public final class GeoUtil {
+
+    public static final double EARTH_RADIUS_KM = 6371.0087714;
+    private static final String BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz";
+
+    private GeoUtil() {
+    }
+
+    // a search distance as Elasticsearch reads it ("50", "50km", "10mi", a bare number is km) in kilometers;
+    // null or empty is CustomLocationRepository.DEFAULT_DISTANCE
+    public static double parseDistanceKm(String distance) throws InvalidSearchDistanceException {
+        if (distance == null || distance.isEmpty()) {
+            distance = CustomLocationRepository.DEFAULT_DISTANCE;
+        }
+        double distanceKm;
+        try {
+            distanceKm = DistanceUnit.parse(distance.trim(), DistanceUnit.KILOMETERS, DistanceUnit.KILOMETERS);
+        } catch (IllegalArgumentException e) {      // NumberFormatException included
+            throw new InvalidSearchDistanceException("Invalid distance: " + distance);
+        }
+        if (!(distanceKm > 0) || Double.isInfinite(distanceKm)) {
+            throw new InvalidSearchDistanceException("Invalid distance: " + distance);
+        }
+        return distanceKm;
+    }
+
+    public static double distanceKm(double lat1, double lon1, double lat2, double lon2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLon = Math.toRadians(lon2 - lon1);
+        double h = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1, Math.sqrt(h)));
+    }
+
+    // the geohash cell of the given precision (number of base32 characters) that contains the point
+    public static Cell cell(double lat, double lon, int precision) {
+        double minLat = -90, maxLat = 90, minLon = -180, maxLon = 180;
+        StringBuilder hash = new StringBuilder(precision);
+        boolean evenBit = true;          // geohash interleaves bits, starting with longitude
+        int bit = 0;
+        int ch = 0;
+        while (hash.length() < precision) {
+            if (evenBit) {
+                double mid = (minLon + maxLon) / 2;
+                if (lon >= mid) {
+                    ch = (ch << 1) | 1;
+                    minLon = mid;
+                } else {
+                    ch = ch << 1;
+                    maxLon = mid;
+                }
+            } else {
+                double mid = (minLat + maxLat) / 2;
+                if (lat >= mid) {
+                    ch = (ch << 1) | 1;
+                    minLat = mid;
+                } else {
+                    ch = ch << 1;
+                    maxLat = mid;
+                }
+            }
+            evenBit = !evenBit;
+            if (++bit == 5) {
+                hash.append(BASE32.charAt(ch));
+                bit = 0;
+                ch = 0;
+            }
+        }
+        double centerLat = (minLat + maxLat) / 2;
+        double centerLon = (minLon + maxLon) / 2;
+        double halfDiagonalKm = Math.max(distanceKm(centerLat, centerLon, maxLat, maxLon), distanceKm(centerLat, centerLon, minLat, maxLon));
+        return new Cell(hash.toString(), centerLat, centerLon, halfDiagonalKm);
+    }
+
+    public static class Cell {
+        private final String hash;
+        private final double centerLat;
+        private final double centerLon;
+        private final double halfDiagonalKm;    // no point of the cell is further than this from its center
+
+        public Cell(String hash, double centerLat, double centerLon, double halfDiagonalKm) {
+            this.hash = hash;
+            this.centerLat = centerLat;
+            this.centerLon = centerLon;
+            this.halfDiagonalKm = halfDiagonalKm;
+        }
+
+        public String getHash() {
+            return hash;
+        }
+
+        public double getCenterLat() {
+            return centerLat;
+        }
+
+        public double getCenterLon() {
+            return centerLon;
+        }
+
+        public double getHalfDiagonalKm() {
+            return halfDiagonalKm;
+        }
+    }
+}
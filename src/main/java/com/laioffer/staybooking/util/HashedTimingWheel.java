@@ -0,0 +1,123 @@
+package com.laioffer.staybooking.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*A hashed timing wheel for very many short timeouts that are usually cancelled before they fire (e.g. reservation holds).
+Time is cut into ticks; a timeout lands in bucket (deadline tick % wheel size) with the number of full turns still to wait.
+Scheduling and cancelling are O(1) and lock-free for the caller: new timeouts go through a queue that the single worker
+thread drains into the buckets, and a cancelled timeout is only marked and is dropped when the worker next passes its bucket.
+Each tick the worker visits one bucket, so a timeout fires at most one tick late. Tasks run on the worker thread and must be short.*/
+public class HashedTimingWheel {
+
+    private static final Logger logger = LoggerFactory.getLogger(HashedTimingWheel.class);
+
+    private final long tickNanos;
+    private final List<Timeout>[] wheel;
+    private final Queue<Timeout> added = new ConcurrentLinkedQueue<>();
+    private final Thread worker;
+    private final long startTime;
+    private volatile boolean stopped;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})     // no generic array creation in Java
+    public HashedTimingWheel(String name, long tick, TimeUnit unit, int wheelSize) {
+        this.tickNanos = unit.toNanos(tick);
+        this.wheel = new List[wheelSize];
+        for (int i = 0; i < wheelSize; i++) {
+            wheel[i] = new ArrayList<>();
+        }
+        this.startTime = System.nanoTime();
+        this.worker = new Thread(this::run, name);
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        Timeout timeout = new Timeout(task, System.nanoTime() + unit.toNanos(delay));
+        added.add(timeout);
+        return timeout;
+    }
+
+    public void stop() {
+        stopped = true;
+        worker.interrupt();
+    }
+
+    private void run() {
+        long tick = 0;
+        while (!stopped) {
+            long sleepNanos = startTime + (tick + 1) * tickNanos - System.nanoTime();
+            if (sleepNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                } catch (InterruptedException e) {
+                    return;      // stop()
+                }
+            }
+            transferAdded(tick);
+            expire(wheel[(int) (tick % wheel.length)]);
+            tick++;
+        }
+    }
+
+    private void transferAdded(long currentTick) {
+        Timeout timeout;
+        while ((timeout = added.poll()) != null) {
+            if (timeout.state.get() != Timeout.PENDING) {
+                continue;
+            }
+            // never schedule into a bucket the worker has already passed in this turn
+            long deadlineTick = Math.max(currentTick, (timeout.deadline - startTime + tickNanos - 1) / tickNanos);
+            timeout.remainingRounds = (deadlineTick - currentTick) / wheel.length;
+            wheel[(int) (deadlineTick % wheel.length)].add(timeout);
+        }
+    }
+
+    private void expire(List<Timeout> bucket) {
+        int kept = 0;
+        for (Timeout timeout : bucket) {
+            if (timeout.state.get() == Timeout.CANCELLED) {
+                continue;
+            }
+            if (timeout.remainingRounds > 0) {
+                timeout.remainingRounds--;
+                bucket.set(kept++, timeout);
+            } else if (timeout.state.compareAndSet(Timeout.PENDING, Timeout.EXPIRED)) {
+                try {
+                    timeout.task.run();
+                } catch (RuntimeException e) {
+                    logger.warn("Timing wheel task failed", e);       // one failing task must not stop the wheel
+                }
+            }
+        }
+        bucket.subList(kept, bucket.size()).clear();
+    }
+
+    public static class Timeout {
+        private static final int PENDING = 0;
+        private static final int CANCELLED = 1;
+        private static final int EXPIRED = 2;
+
+        private final Runnable task;
+        private final long deadline;
+        private final AtomicInteger state = new AtomicInteger(PENDING);
+        private long remainingRounds;            // only touched by the worker thread
+
+        private Timeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        // true if the task will not run; false if it has already run (or is running)
+        public boolean cancel() {
+            return state.compareAndSet(PENDING, CANCELLED) || state.get() == CANCELLED;
+        }
+    }
+}
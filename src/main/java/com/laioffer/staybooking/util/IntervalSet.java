@@ -0,0 +1,86 @@
+package com.laioffer.staybooking.util;
+
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/*Booked nights of one stay as disjoint, non-adjacent [start, end) intervals in a balanced search tree keyed by start (a TreeMap).
+Because the intervals never overlap, the interval with the greatest start before a query's end is the only one that can reach
+into the query, so an overlap check is one O(log n) lookup and needs no max-end augmentation of the tree.
+Memory grows with the number of bookings, not with the number of nights. Guarded by its own monitor.*/
+public class IntervalSet implements BookedNights {
+
+    private final NavigableMap<Long, Long> intervals = new TreeMap<>();      // start -> end
+
+    @Override
+    public synchronized void set(long fromDay, long toDay) {
+        if (fromDay >= toDay) {
+            return;
+        }
+        // merge with an interval that reaches fromDay and with every interval starting inside [fromDay, toDay]
+        Map.Entry<Long, Long> before = intervals.floorEntry(fromDay);
+        if (before != null && before.getValue() >= fromDay) {
+            fromDay = before.getKey();
+            toDay = Math.max(toDay, before.getValue());
+        }
+        Map.Entry<Long, Long> next = intervals.ceilingEntry(fromDay);
+        while (next != null && next.getKey() <= toDay) {
+            toDay = Math.max(toDay, next.getValue());
+            intervals.remove(next.getKey());
+            next = intervals.higherEntry(next.getKey());
+        }
+        intervals.put(fromDay, toDay);
+    }
+
+    @Override
+    public synchronized void clear(long fromDay, long toDay) {
+        if (fromDay >= toDay) {
+            return;
+        }
+        Map.Entry<Long, Long> before = intervals.lowerEntry(fromDay);
+        if (before != null && before.getValue() > fromDay) {
+            intervals.put(before.getKey(), fromDay);           // keep the part before fromDay
+            if (before.getValue() > toDay) {
+                intervals.put(toDay, before.getValue());       // and the part after toDay
+            }
+        }
+        Map.Entry<Long, Long> next = intervals.ceilingEntry(fromDay);
+        while (next != null && next.getKey() < toDay) {
+            intervals.remove(next.getKey());
+            if (next.getValue() > toDay) {
+                intervals.put(toDay, next.getValue());
+            }
+            next = intervals.higherEntry(next.getKey());
+        }
+    }
+
+    @Override
+    public synchronized boolean anySet(long fromDay, long toDay) {
+        Map.Entry<Long, Long> last = intervals.lowerEntry(toDay);
+        return fromDay < toDay && last != null && last.getValue() > fromDay;
+    }
+
+    @Override
+    public synchronized void forEachRun(long fromDay, RunConsumer consumer) {
+        Map.Entry<Long, Long> first = intervals.floorEntry(fromDay);
+        if (first != null && first.getValue() > fromDay) {
+            consumer.accept(fromDay, first.getValue());
+        }
+        for (Map.Entry<Long, Long> interval : intervals.tailMap(fromDay, false).entrySet()) {
+            consumer.accept(interval.getKey(), interval.getValue());
+        }
+    }
+
+    @Override
+    public synchronized long firstClearRun(long fromDay, long toDay, long length) {
+        long start = fromDay;
+        while (start + length <= toDay) {
+            Map.Entry<Long, Long> blocking = intervals.lowerEntry(start + length);
+            if (blocking == null || blocking.getValue() <= start) {
+                return start;
+            }
+            start = blocking.getValue();
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,93 @@
+package com.laioffer.staybooking.util;
+
+import java.util.Arrays;
+
+/*A set of primitive longs (open addressing, linear probing), so merging thousands of stay ids does not box every id
+into a Long and a HashMap node. Not thread safe.*/
+public class LongHashSet {
+
+    private static final long EMPTY = Long.MIN_VALUE;     // never a stay id; tracked separately so it can still be stored
+
+    private long[] slots;
+    private int size;
+    private boolean containsEmpty;
+
+    public LongHashSet() {
+        this(16);
+    }
+
+    public LongHashSet(int expectedSize) {
+        slots = new long[Math.max(16, Integer.highestOneBit(Math.max(1, expectedSize) * 2 - 1) << 1)];
+        Arrays.fill(slots, EMPTY);
+    }
+
+    public boolean add(long value) {
+        if (value == EMPTY) {
+            boolean added = !containsEmpty;
+            containsEmpty = true;
+            size += added ? 1 : 0;
+            return added;
+        }
+        int index = indexOf(value, slots);
+        if (slots[index] == value) {
+            return false;
+        }
+        slots[index] = value;
+        if (++size * 2 > slots.length) {       // keep the load factor at or below 1/2
+            grow();
+        }
+        return true;
+    }
+
+    public void addAll(LongHashSet other) {
+        if (other.containsEmpty) {
+            add(EMPTY);
+        }
+        for (long value : other.slots) {
+            if (value != EMPTY) {
+                add(value);
+            }
+        }
+    }
+
+    public boolean contains(long value) {
+        if (value == EMPTY) {
+            return containsEmpty;
+        }
+        return slots[indexOf(value, slots)] == value;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    // slot holding value, or the empty slot where it would go
+    private static int indexOf(long value, long[] slots) {
+        int mask = slots.length - 1;
+        int index = mix(value) & mask;
+        while (slots[index] != EMPTY && slots[index] != value) {
+            index = (index + 1) & mask;
+        }
+        return index;
+    }
+
+    private static int mix(long value) {
+        long h = value * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private void grow() {
+        long[] grown = new long[slots.length * 2];
+        Arrays.fill(grown, EMPTY);
+        for (long value : slots) {
+            if (value != EMPTY) {
+                grown[indexOf(value, grown)] = value;
+            }
+        }
+        slots = grown;
+    }
+}
@@ -0,0 +1,31 @@
+package com.laioffer.staybooking.util;
+
+import com.laioffer.staybooking.exception.InvalidSearchCursorException;
+import com.laioffer.staybooking.model.ReservationSummary;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Base64;
+
+/*Keyset cursor of reservation listings: the (checkin_date, id) of the last reservation on a page, see SearchCursorUtil.*/
+public final class ReservationCursorUtil {
+
+    private ReservationCursorUtil() {
+    }
+
+    public static String encode(ReservationSummary last) {
+        String position = last.getCheckinDate() + ":" + last.getId();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // only checkinDate and id are set
+    public static ReservationSummary decode(String cursor) throws InvalidSearchCursorException {
+        try {
+            String position = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = position.indexOf(':');
+            return new ReservationSummary(Long.parseLong(position.substring(separator + 1)), LocalDate.parse(position.substring(0, separator)), null, null, null, null);
+        } catch (RuntimeException e) {         // bad base64, missing separator, bad date or bad id
+            throw new InvalidSearchCursorException("Invalid cursor");
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.laioffer.staybooking.util;
+
+import com.laioffer.staybooking.exception.InvalidSearchCursorException;
+import com.laioffer.staybooking.model.LocationHit;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/*Turns the sort position of the last hit on a page into the opaque cursor handed to clients, and back.
+The cursor only carries (distance, id); the client sends the other search parameters again with every page.*/
+public final class SearchCursorUtil {
+
+    private SearchCursorUtil() {
+    }
+
+    public static String encode(LocationHit hit) {
+        String position = hit.getDistance() + ":" + hit.getId();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static LocationHit decode(String cursor) throws InvalidSearchCursorException {
+        try {
+            String position = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = position.indexOf(':');
+            return new LocationHit(Long.parseLong(position.substring(separator + 1)), Double.parseDouble(position.substring(0, separator)));
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {   // NumberFormatException is an IllegalArgumentException
+            throw new InvalidSearchCursorException("Invalid search cursor");
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.laioffer.staybooking.util;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/*Coalesces concurrent calls for the same key: the first caller runs the computation, every caller that arrives while it is
+still running waits for and returns the same result (or exception) instead of computing it again. Nothing is cached:
+the key is forgotten as soon as the computation finishes, so a later call always computes afresh.*/
+public class SingleFlight<K, V> {
+
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder collapsed = new LongAdder();
+
+    public V execute(K key, Supplier<V> computation) {
+        CompletableFuture<V> future = new CompletableFuture<>();
+        CompletableFuture<V> running = inFlight.putIfAbsent(key, future);
+        if (running != null) {
+            collapsed.increment();
+            return await(running);
+        }
+        try {
+            V value = computation.get();
+            future.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+
+    // number of calls that were answered by another caller's computation
+    public long collapsed() {
+        return collapsed.sum();
+    }
+
+    public int inFlight() {
+        return inFlight.size();
+    }
+
+    // rethrows the leader's exception as is, so waiters see the same exception type (and HTTP status) as the leader
+    private static <V> V await(CompletableFuture<V> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.laioffer.staybooking.util;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/*Helpers for work that must only happen once the database agrees, e.g. updating in-memory indexes or Elasticsearch
+after a reservation is committed. Outside of a transaction the action simply runs right away.*/
+public final class TransactionUtil {
+
+    private TransactionUtil() {
+    }
+
+    public static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+}
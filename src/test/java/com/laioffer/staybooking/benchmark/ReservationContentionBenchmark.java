@@ -0,0 +1,303 @@
+package com.laioffer.staybooking.benchmark;
+
+import com.google.cloud.storage.Storage;
+import com.laioffer.staybooking.StaybookingApplication;
+import com.laioffer.staybooking.config.ElasticSearchConfig;
+import com.laioffer.staybooking.config.GoogleCloudStorageConfig;
+import com.laioffer.staybooking.exception.ReservationCollisionException;
+import com.laioffer.staybooking.model.BookedRange;
+import com.laioffer.staybooking.model.Reservation;
+import com.laioffer.staybooking.model.Stay;
+import com.laioffer.staybooking.model.User;
+import com.laioffer.staybooking.repository.StayRepository;
+import com.laioffer.staybooking.repository.UserRepository;
+import com.laioffer.staybooking.service.ReservationService;
+import com.laioffer.staybooking.service.ReservedDateStore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.mockito.Mockito;
+import org.springframework.boot.autoconfigure.AutoConfigurationPackage;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.data.elasticsearch.ElasticsearchDataAutoConfiguration;
+import org.springframework.boot.autoconfigure.data.elasticsearch.ElasticsearchRepositoriesAutoConfiguration;
+import org.springframework.boot.autoconfigure.elasticsearch.ElasticsearchRestClientAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.FilterType;
+import org.springframework.dao.PessimisticLockingFailureException;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/*Drives the real booking path (ReservationService.add: admission, ReservedDateStore, reservation insert, occupancy tally, outbox)
+with many concurrent guests against H2 in MySQL mode standing in for MySQL, and reports throughput, collision rate, latency
+percentiles and lock failures, so that changes to the booking path can be compared run to run with the same parameters.
+
+    mvn -Pbenchmark test-compile exec:java -Dexec.args="bookers=500 stays=5 dates=hotspot"
+
+Parameters are name=value pairs (defaults in brackets):
+    bookers [200]           concurrent guests, one thread each, all released at once
+    attempts [20]           bookings each guest tries
+    stays [20]              stays competed for
+    stay-skew [zipf]        uniform or zipf: which stay a guest picks
+    days [90]               length of the bookable window, starting on a Friday at least a week ahead
+    dates [hotspot]         uniform, hotspot (hot-fraction of guests want the first weekend) or zipf (early days are hottest)
+    hot-fraction [0.8]
+    zipf-exponent [1.0]
+    min-nights [1], max-nights [3]
+Arguments starting with -- are passed to Spring, e.g. --reservation.storage=intervals or --spring.datasource.hikari.maximum-pool-size=20.
+
+H2 is not MySQL: its locking and I/O differ, so absolute numbers only compare runs of this benchmark with each other.*/
+public class ReservationContentionBenchmark {
+
+    public static void main(String[] args) throws InterruptedException {
+        Map<String, String> params = new HashMap<>();
+        List<String> springArgs = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--")) {
+                springArgs.add(arg);
+            } else if (arg.contains("=")) {
+                params.put(arg.substring(0, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+            }
+        }
+        Workload workload = new Workload(params);
+
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(BenchmarkApplication.class)
+                .profiles("benchmark")
+                .run(springArgs.toArray(new String[0]))) {
+            new ReservationContentionBenchmark(context, workload).run();
+        }
+    }
+
+    // the application without Elasticsearch, Google Cloud Storage and controllers; the location index is the embedded one.
+    // Not a @SpringBootConfiguration: that is a @Component, and the test application's own scan would pick this class up
+    @EnableAutoConfiguration(exclude = {ElasticsearchDataAutoConfiguration.class, ElasticsearchRepositoriesAutoConfiguration.class,
+            ElasticsearchRestClientAutoConfiguration.class})
+    @AutoConfigurationPackage(basePackageClasses = StaybookingApplication.class)
+    @ComponentScan(basePackageClasses = StaybookingApplication.class, excludeFilters = {
+            @ComponentScan.Filter(type = FilterType.ASSIGNABLE_TYPE, classes = {StaybookingApplication.class, ElasticSearchConfig.class,
+                    GoogleCloudStorageConfig.class}),
+            @ComponentScan.Filter(type = FilterType.REGEX, pattern = "com\\.laioffer\\.staybooking\\.controller\\..*")})
+    static class BenchmarkApplication {
+
+        @Bean
+        public Storage storage() {
+            return Mockito.mock(Storage.class);        // stay images are never uploaded here
+        }
+    }
+
+    private final ReservationService reservationService;
+    private final ReservedDateStore reservedDateStore;
+    private final UserRepository userRepository;
+    private final StayRepository stayRepository;
+    private final MeterRegistry meterRegistry;
+    private final Workload workload;
+
+    private ReservationContentionBenchmark(ConfigurableApplicationContext context, Workload workload) {
+        this.reservationService = context.getBean(ReservationService.class);
+        this.reservedDateStore = context.getBean(ReservedDateStore.class);
+        this.userRepository = context.getBean(UserRepository.class);
+        this.stayRepository = context.getBean(StayRepository.class);
+        this.meterRegistry = context.getBean(MeterRegistry.class);
+        this.workload = workload;
+    }
+
+    private void run() throws InterruptedException {
+        User host = userRepository.save(new User.Builder().setUsername("benchmark-host").setPassword("").setEnabled(true).build());
+        Stay[] stays = new Stay[workload.stays];
+        for (int i = 0; i < stays.length; i++) {
+            stays[i] = stayRepository.save(new Stay.Builder().setName("stay " + i).setDescription("").setAddress("").setGuestNumber(4).setHost(host).build());
+        }
+        User[] guests = new User[workload.bookers];
+        for (int i = 0; i < guests.length; i++) {
+            guests[i] = userRepository.save(new User.Builder().setUsername("benchmark-guest-" + i).setPassword("").setEnabled(true).build());
+        }
+
+        double booked0 = admissionRejections("booked");
+        double inFlight0 = admissionRejections("in_flight");
+        AtomicLong succeeded = new AtomicLong();
+        AtomicLong collided = new AtomicLong();
+        AtomicLong lockFailures = new AtomicLong();
+        AtomicLong errors = new AtomicLong();
+        AtomicLong nightsBooked = new AtomicLong();
+        AtomicReference<Throwable> firstError = new AtomicReference<>();
+        long[][] latencies = new long[workload.bookers][workload.attempts];
+
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(workload.bookers);
+        for (int b = 0; b < workload.bookers; b++) {
+            int booker = b;
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < workload.attempts; i++) {
+                        Stay stay = stays[workload.pickStay(random)];
+                        LocalDate checkin = workload.pickCheckin(random);
+                        int nights = workload.pickNights(random);
+                        Reservation reservation = new Reservation.Builder()
+                                .setCheckinDate(checkin)
+                                .setCheckoutDate(checkin.plusDays(nights))
+                                .setStay(stay)
+                                .setGuest(guests[booker])
+                                .build();
+                        long started = System.nanoTime();
+                        try {
+                            reservationService.add(reservation);
+                            succeeded.incrementAndGet();
+                            nightsBooked.addAndGet(nights);
+                        } catch (ReservationCollisionException e) {
+                            collided.incrementAndGet();
+                        } catch (PessimisticLockingFailureException e) {     // deadlock victim or lock wait timeout
+                            lockFailures.incrementAndGet();
+                        } catch (RuntimeException e) {
+                            errors.incrementAndGet();
+                            firstError.compareAndSet(null, e);
+                        }
+                        latencies[booker][i] = System.nanoTime() - started;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            }, "booker-" + b);
+            thread.start();
+        }
+
+        long started = System.nanoTime();
+        start.countDown();
+        done.await();
+        double seconds = (System.nanoTime() - started) / 1e9;
+
+        long attempts = (long) workload.bookers * workload.attempts;
+        long[] all = Arrays.stream(latencies).flatMapToLong(Arrays::stream).sorted().toArray();
+        long rejectedBooked = Math.round(admissionRejections("booked") - booked0);
+        long rejectedInFlight = Math.round(admissionRejections("in_flight") - inFlight0);
+
+        long nightsStored = 0;
+        LocalDate windowEnd = workload.firstDay.plusDays(workload.days + workload.maxNights);
+        for (Stay stay : stays) {
+            for (BookedRange range : reservedDateStore.bookedRanges(stay.getId(), workload.firstDay, windowEnd)) {
+                nightsStored += ChronoUnit.DAYS.between(range.getGte(), range.getLt());
+            }
+        }
+
+        System.out.println();
+        System.out.println("workload            " + workload);
+        System.out.printf("attempts            %d in %.2f s%n", attempts, seconds);
+        System.out.printf("bookings/sec        %.1f (%d booked)%n", succeeded.get() / seconds, succeeded.get());
+        System.out.printf("attempts/sec        %.1f%n", attempts / seconds);
+        System.out.printf("collision rate      %.1f%% (%d: %d already booked, %d in flight, %d by the database)%n",
+                100.0 * collided.get() / attempts, collided.get(), rejectedBooked, rejectedInFlight,
+                collided.get() - rejectedBooked - rejectedInFlight);
+        System.out.printf("latency p50         %.2f ms%n", percentile(all, 0.50) / 1e6);
+        System.out.printf("latency p99         %.2f ms%n", percentile(all, 0.99) / 1e6);
+        System.out.printf("latency max         %.2f ms%n", all[all.length - 1] / 1e6);
+        System.out.printf("lock failures       %d (deadlocks and lock wait timeouts)%n", lockFailures.get());
+        System.out.printf("other errors        %d%s%n", errors.get(), firstError.get() == null ? "" : ", first: " + firstError.get());
+        System.out.printf("nights booked       %d, stored %d%s%n", nightsBooked.get(), nightsStored,
+                nightsBooked.get() == nightsStored ? "" : "  <-- MISMATCH: double booking or lost nights");
+    }
+
+    private double admissionRejections(String result) {
+        Counter counter = meterRegistry.find("reservation.admission").tag("result", result).counter();
+        return counter == null ? 0 : counter.count();
+    }
+
+    private static long percentile(long[] sorted, double quantile) {
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(quantile * sorted.length) - 1)];
+    }
+
+    private static class Workload {
+        final int bookers;
+        final int attempts;
+        final int stays;
+        final String staySkew;
+        final int days;
+        final String dates;
+        final double hotFraction;
+        final double zipfExponent;
+        final int minNights;
+        final int maxNights;
+        final LocalDate firstDay;
+        final double[] stayCdf;
+        final double[] dayCdf;
+
+        Workload(Map<String, String> params) {
+            bookers = Integer.parseInt(params.getOrDefault("bookers", "200"));
+            attempts = Integer.parseInt(params.getOrDefault("attempts", "20"));
+            stays = Integer.parseInt(params.getOrDefault("stays", "20"));
+            staySkew = params.getOrDefault("stay-skew", "zipf");
+            days = Integer.parseInt(params.getOrDefault("days", "90"));
+            dates = params.getOrDefault("dates", "hotspot");
+            hotFraction = Double.parseDouble(params.getOrDefault("hot-fraction", "0.8"));
+            zipfExponent = Double.parseDouble(params.getOrDefault("zipf-exponent", "1.0"));
+            minNights = Integer.parseInt(params.getOrDefault("min-nights", "1"));
+            maxNights = Integer.parseInt(params.getOrDefault("max-nights", "3"));
+            firstDay = LocalDate.now().plusWeeks(1).with(TemporalAdjusters.nextOrSame(DayOfWeek.FRIDAY));
+            stayCdf = zipfCdf(stays, zipfExponent);
+            dayCdf = zipfCdf(days, zipfExponent);
+        }
+
+        int pickStay(ThreadLocalRandom random) {
+            return "zipf".equals(staySkew) ? sample(stayCdf, random) : random.nextInt(stays);
+        }
+
+        LocalDate pickCheckin(ThreadLocalRandom random) {
+            switch (dates) {
+                case "hotspot":
+                    if (random.nextDouble() < hotFraction) {
+                        return firstDay.plusDays(random.nextInt(2));        // Friday or Saturday of the hot weekend
+                    }
+                    return firstDay.plusDays(random.nextInt(days));
+                case "zipf":
+                    return firstDay.plusDays(sample(dayCdf, random));
+                default:
+                    return firstDay.plusDays(random.nextInt(days));
+            }
+        }
+
+        int pickNights(ThreadLocalRandom random) {
+            return minNights + random.nextInt(maxNights - minNights + 1);
+        }
+
+        // cumulative probabilities of ranks 1..n with weight 1 / rank^exponent
+        private static double[] zipfCdf(int n, double exponent) {
+            double[] cdf = new double[n];
+            double sum = 0;
+            for (int i = 0; i < n; i++) {
+                sum += 1 / Math.pow(i + 1, exponent);
+                cdf[i] = sum;
+            }
+            for (int i = 0; i < n; i++) {
+                cdf[i] /= sum;
+            }
+            return cdf;
+        }
+
+        private static int sample(double[] cdf, ThreadLocalRandom random) {
+            int index = Arrays.binarySearch(cdf, random.nextDouble());
+            return Math.min(cdf.length - 1, index >= 0 ? index : -index - 1);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("bookers=%d attempts=%d stays=%d stay-skew=%s days=%d dates=%s hot-fraction=%s zipf-exponent=%s nights=%d-%d",
+                    bookers, attempts, stays, staySkew, days, dates, hotFraction, zipfExponent, minNights, maxNights);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.laioffer.staybooking.service;
+
+import com.laioffer.staybooking.model.StayReservedInterval;
+import com.laioffer.staybooking.repository.StayRepository;
+import com.laioffer.staybooking.repository.StayReservationDateRepository;
+import com.laioffer.staybooking.repository.StayReservedIntervalRepository;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/*release() has to keep the parts of a collapsed interval outside the cancelled reservation, whether one interval covers it or
+it spans two adjacent ones.*/
+class IntervalReservedDateStoreTest {
+
+    private static final Long STAY_ID = 7L;
+    private static final LocalDate DAY = LocalDate.of(2024, 5, 1);
+
+    private final StayReservedIntervalRepository intervalRepository = mock(StayReservedIntervalRepository.class);
+    private final StayRepository stayRepository = mock(StayRepository.class);
+    private final IntervalReservedDateStore store = new IntervalReservedDateStore(intervalRepository, mock(StayReservationDateRepository.class),
+            stayRepository, mock(PlatformTransactionManager.class));
+
+    @Test
+    void releaseSplitsTheCoveringInterval() {
+        List<StayReservedInterval> overlapping = List.of(interval(0, 10));
+        when(intervalRepository.findOverlappingForUpdate(STAY_ID, day(3), day(6))).thenReturn(overlapping);
+
+        store.release(STAY_ID, day(3), day(6));
+
+        InOrder order = inOrder(stayRepository, intervalRepository);       // the stay is locked before its intervals are read
+        order.verify(stayRepository).lockById(STAY_ID);
+        order.verify(intervalRepository).findOverlappingForUpdate(STAY_ID, day(3), day(6));
+        verify(intervalRepository).deleteAllInBatch(overlapping);
+        assertEquals(List.of("0-3", "6-10"), savedRemainders());
+    }
+
+    @Test
+    void releaseKeepsTheOuterPartsOfAdjacentIntervals() {
+        List<StayReservedInterval> overlapping = List.of(interval(0, 5), interval(5, 9));
+        when(intervalRepository.findOverlappingForUpdate(STAY_ID, day(3), day(7))).thenReturn(overlapping);
+
+        store.release(STAY_ID, day(3), day(7));
+
+        verify(intervalRepository).deleteAllInBatch(overlapping);
+        assertEquals(List.of("0-3", "7-9"), savedRemainders());
+    }
+
+    @Test
+    void releaseOfAWholeIntervalLeavesNothing() {
+        List<StayReservedInterval> overlapping = List.of(interval(2, 5));
+        when(intervalRepository.findOverlappingForUpdate(STAY_ID, day(2), day(5))).thenReturn(overlapping);
+
+        store.release(STAY_ID, day(2), day(5));
+
+        verify(intervalRepository).deleteAllInBatch(overlapping);
+        assertEquals(List.of(), savedRemainders());
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<String> savedRemainders() {
+        ArgumentCaptor<List<StayReservedInterval>> saved = ArgumentCaptor.forClass(List.class);
+        verify(intervalRepository).saveAll(saved.capture());
+        List<String> remainders = new ArrayList<>();
+        for (StayReservedInterval interval : saved.getValue()) {
+            assertEquals(STAY_ID, interval.getStayId());
+            remainders.add(DAY.until(interval.getCheckinDate()).getDays() + "-" + DAY.until(interval.getCheckoutDate()).getDays());
+        }
+        return remainders;
+    }
+
+    private static StayReservedInterval interval(int from, int to) {
+        return new StayReservedInterval(STAY_ID, day(from), day(to));
+    }
+
+    private static LocalDate day(int offset) {
+        return DAY.plusDays(offset);
+    }
+}
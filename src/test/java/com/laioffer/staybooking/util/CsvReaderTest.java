@@ -0,0 +1,60 @@
+package com.laioffer.staybooking.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/*CsvReader against the RFC 4180 cases the stay import sees: quoted fields, "" inside quotes, line breaks inside quotes and
+CRLF line ends. Each record is checked together with the line it starts on, since rejected records are reported by line.*/
+class CsvReaderTest {
+
+    @Test
+    void readsPlainAndQuotedFields() throws IOException {
+        assertEquals(List.of("1: [name, address, guest_number]", "2: [Loft, 1 Main St, 2]", "3: [Loft, 1 Main St, Apt 2, 4]", "4: [, , ]"),
+                records("name,address,guest_number\nLoft,1 Main St,2\n\"Loft\",\"1 Main St, Apt 2\",4\n,\"\",\n"));
+    }
+
+    @Test
+    void unescapesDoubledQuotes() throws IOException {
+        assertEquals(List.of("1: [say \"hi\", \", a\"b\"]"),
+                records("\"say \"\"hi\"\"\",\"\"\"\",a\"b\"\n"));       // a quote inside an unquoted field is kept as is
+    }
+
+    @Test
+    void keepsLineBreaksInsideQuotes() throws IOException {
+        assertEquals(List.of("1: [Loft, two\nlines, x]", "3: [next, a\r\nb, y]", "5: [last, , z]"),
+                records("Loft,\"two\nlines\",x\nnext,\"a\r\nb\",y\nlast,,z"));
+    }
+
+    @Test
+    void readsCrlfAndLoneCrLineEnds() throws IOException {
+        assertEquals(List.of("1: [a, b]", "2: [c, d]", "3: [e, f]", "4: []"),
+                records("a,b\r\nc,d\re,f\r\n\r\n"));
+    }
+
+    @Test
+    void reportsAnUnterminatedQuoteOnTheLineItStarts() throws IOException {
+        CsvReader csv = new CsvReader(new StringReader("a,b\nc,\"open\nd,e\n"));
+        assertEquals(List.of("a", "b"), csv.next());
+        CsvReader.MalformedCsvException e = assertThrows(CsvReader.MalformedCsvException.class, csv::next);
+        assertEquals(2, e.getLine());
+        assertNull(csv.next());
+    }
+
+    private static List<String> records(String input) throws IOException {
+        CsvReader csv = new CsvReader(new StringReader(input));
+        List<String> records = new ArrayList<>();
+        List<String> fields;
+        while ((fields = csv.next()) != null) {
+            records.add(csv.getRecordLine() + ": " + fields);
+        }
+        return records;
+    }
+}
@@ -0,0 +1,114 @@
+package com.laioffer.staybooking.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/*IntervalSet and AvailabilityBitmap must answer every BookedNights call the same way, since AvailabilityIndex uses one or the
+other depending on reservation.storage. Both are driven with the same random set/clear sequences and checked after every step
+against a plain boolean array, night by night.*/
+class IntervalSetTest {
+
+    private static final long BASE_DAY = 19_990;       // not a multiple of 64, so ranges cross bitmap word boundaries
+    private static final int DAYS = 300;
+
+    @Test
+    void matchesBitmapOnRandomSequences() {
+        Random random = new Random(42);
+        for (int round = 0; round < 200; round++) {
+            IntervalSet intervals = new IntervalSet();
+            AvailabilityBitmap bitmap = new AvailabilityBitmap();
+            boolean[] booked = new boolean[DAYS];
+            for (int step = 0; step < 60; step++) {
+                int from = random.nextInt(DAYS);
+                int to = Math.min(DAYS, from + 1 + random.nextInt(30));
+                boolean set = random.nextInt(3) != 0;
+                for (int day = from; day < to; day++) {
+                    booked[day] = set;
+                }
+                if (set) {
+                    intervals.set(BASE_DAY + from, BASE_DAY + to);
+                    bitmap.set(BASE_DAY + from, BASE_DAY + to);
+                } else {
+                    intervals.clear(BASE_DAY + from, BASE_DAY + to);
+                    bitmap.clear(BASE_DAY + from, BASE_DAY + to);
+                }
+                check(random, booked, intervals, bitmap);
+            }
+        }
+    }
+
+    @Test
+    void mergesAdjacentAndSplitsCoveringIntervals() {
+        IntervalSet intervals = new IntervalSet();
+        intervals.set(10, 15);
+        intervals.set(15, 20);          // adjacent: one run
+        intervals.set(30, 40);
+        intervals.set(18, 32);          // bridges both
+        assertEquals(List.of(10L, 40L), runs(intervals, 0));
+
+        intervals.clear(20, 25);        // splits the run in two
+        assertEquals(List.of(10L, 20L, 25L, 40L), runs(intervals, 0));
+        intervals.clear(5, 12);
+        intervals.clear(38, 50);
+        assertEquals(List.of(12L, 20L, 25L, 38L), runs(intervals, 0));
+    }
+
+    private static void check(Random random, boolean[] booked, IntervalSet intervals, AvailabilityBitmap bitmap) {
+        List<Long> expectedRuns = new ArrayList<>();
+        int fromDay = random.nextInt(DAYS);
+        for (int day = fromDay; day < DAYS; day++) {
+            if (booked[day] && (day == fromDay || !booked[day - 1])) {
+                expectedRuns.add(BASE_DAY + day);
+            }
+            if (booked[day] && (day == DAYS - 1 || !booked[day + 1])) {
+                expectedRuns.add(BASE_DAY + day + 1);
+            }
+        }
+        assertEquals(expectedRuns, runs(intervals, BASE_DAY + fromDay));
+        assertEquals(expectedRuns, runs(bitmap, BASE_DAY + fromDay));
+
+        for (int query = 0; query < 20; query++) {
+            int from = random.nextInt(DAYS);
+            int to = Math.min(DAYS, from + random.nextInt(60));
+            boolean anyBooked = false;
+            for (int day = from; day < to; day++) {
+                anyBooked |= booked[day];
+            }
+            assertEquals(anyBooked, intervals.anySet(BASE_DAY + from, BASE_DAY + to));
+            assertEquals(anyBooked, bitmap.anySet(BASE_DAY + from, BASE_DAY + to));
+
+            int length = 1 + random.nextInt(14);
+            long expectedStart = firstClearRun(booked, from, to, length);
+            assertEquals(expectedStart, intervals.firstClearRun(BASE_DAY + from, BASE_DAY + to, length));
+            assertEquals(expectedStart, bitmap.firstClearRun(BASE_DAY + from, BASE_DAY + to, length));
+        }
+    }
+
+    private static long firstClearRun(boolean[] booked, int from, int to, int length) {
+        for (int start = from; start + length <= to; start++) {
+            boolean clear = true;
+            for (int day = start; day < start + length && clear; day++) {
+                clear = !booked[day];
+            }
+            if (clear) {
+                return BASE_DAY + start;
+            }
+        }
+        return -1;
+    }
+
+    // flattened [start, end) pairs of every run at or after fromDay
+    private static List<Long> runs(BookedNights nights, long fromDay) {
+        List<Long> runs = new ArrayList<>();
+        nights.forEachRun(fromDay, (start, end) -> {
+            runs.add(start);
+            runs.add(end);
+        });
+        return runs;
+    }
+}